@@ -1,32 +1,131 @@
+package rest_api_requestor;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
 import java.util.function.Function;
+import java.util.function.IntSupplier;
 import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.ssl.SSLContextBuilder;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import javax.net.ssl.SSLContext;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
 import org.springframework.core.io.Resource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonGetter;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 /**
  * ==================== "Chestniy Znak" API service sample client notes ====================
@@ -46,6 +145,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  * 4. RequestGenerator class generates and sends multiple requests via separate thread (requests quantity can be specified).
  * 5. Needed JSON format presented below, at CrptApi class head.
  * 6. Threads work correctly under wide tests.
+ * 7. JMH benchmarks and local runs against stub of remote API are placed apart, in CrptApiBenchmark.java
+ *    (built with its JMH dependencies by pom.xml next to it).
  * 
  * 
  * @author Authored by Andrey Miroshnichenko (deployed as CrptApi.java onto https://github.com/merzsh/test at 11.10.2023)
@@ -81,10 +182,118 @@ public class CrptApi {
 	
 	public static enum MsgCommand { STARTED, DATA, POISON_PILL, INTERRUPTED, EXCEPTION }
 	
-	public static class Header {
+	/**
+	 * Fields validation engine. Rules are precompiled allocation free checks (no regular expressions),
+	 * rule checks cheap conditions (i.e. length) first. All violations are collected without exceptions thrown,
+	 * caller decides whether to throw (builders do it on build()) or just to report them.
+	 */
+	public static class Validation {
+		protected static final String STR_FIELD_EMPTY		= "There are null, empty or wrong value fields: %s";
+		protected static final String STR_FIELDS_DELIMITER	= ", ";
+		
+		@FunctionalInterface
+		public static interface Rule {
+			boolean test(CharSequence value);
+		}
+		
+		// digits only (empty value is allowed)
+		public static final Rule DIGITS		= Validation::isDigits;
+		// taxpayer identification number - 10 (legal entity) or 12 (individual) digits with check digits,
+		// opt-in by builders strictInn(), INN fields are checked by DIGITS by default
+		public static final Rule INN		= Validation::isInn;
+		// registration number - digits only
+		public static final Rule REG_NUMBER	= DIGITS;
+		
+		private static final int[] INN10_WEIGHTS	= { 2, 4, 10, 3, 5, 9, 4, 6, 8 };
+		private static final int[] INN11_WEIGHTS	= { 7, 2, 4, 10, 3, 5, 9, 4, 6, 8 };
+		private static final int[] INN12_WEIGHTS	= { 3, 7, 2, 4, 10, 3, 5, 9, 4, 6, 8 };
+		
+		// allocated by the first violation only
+		protected List<String> violations = null;
+		
+		public static boolean isDigits(CharSequence value) {
+			for(int i=0; i<value.length(); i++) {
+				char c = value.charAt(i);
+				if(c < '0' || c > '9') return false;
+			}
+			return true;
+		}
+		
+		/**
+		 * Calculates INN check digit
+		 * @param value - INN digits
+		 * @param weights - check digit weights, check digit position is weights length
+		 */
+		public static int innCheckDigit(CharSequence value, int[] weights) {
+			int sum = 0;
+			for(int i=0; i<weights.length; i++) sum += (value.charAt(i) - '0') * weights[i];
+			
+			return (sum % 11) % 10;
+		}
+		
+		public static boolean isInn(CharSequence value) {
+			int length = value.length();
+			
+			// cheap checks first
+			if(length != 10 && length != 12) return false;
+			if( !isDigits(value) ) return false;
+			
+			if(length == 10) return innCheckDigit(value, INN10_WEIGHTS) == value.charAt(9) - '0';
+			
+			return innCheckDigit(value, INN11_WEIGHTS) == value.charAt(10) - '0' &&
+					innCheckDigit(value, INN12_WEIGHTS) == value.charAt(11) - '0';
+		}
+		
+		public Validation() { }
+		
+		/**
+		 * Registers field violation
+		 * @param field - field name
+		 */
+		public Validation violation(String field) {
+			if(violations == null) violations = new ArrayList<>();
+			violations.add(field);
+			return this;
+		}
+		
+		/**
+		 * Checks condition is met
+		 * @param field - field name reported in case of violation
+		 * @param valid - condition
+		 */
+		public Validation check(String field, boolean valid) {
+			if(!valid) violation(field);
+			return this;
+		}
+		
+		/**
+		 * Checks optional field value by rule, null value is not checked
+		 * @param field - field name reported in case of violation
+		 * @param value - field value
+		 * @param rule - validation rule
+		 */
+		public Validation check(String field, CharSequence value, Rule rule) {
+			if( value != null && !rule.test(value) ) violation(field);
+			return this;
+		}
+		
+		public boolean isValid() {
+			return violations == null;
+		}
+		
+		public List<String> getViolations() {
+			return (violations != null) ? Collections.unmodifiableList(violations) : Collections.emptyList();
+		}
+		
+		public void throwIfInvalid() {
+			if(violations != null) 
+				throw new IllegalArgumentException( String.format(STR_FIELD_EMPTY, String.join(STR_FIELDS_DELIMITER, violations)) );
+		}
+	}
+	
+	public static class Header implements Cloneable {
 		protected static final String STR_EMPTY			= "";
 		protected static final String STR_FIELD_EMPTY 	= "There are null, empty or wrong value fields: %s";
-		protected static final String STR_REGEXP_NUMBER	= "^\\d*$";
 		protected static final String STR_DATE_PETTERN	= "yyyy-MM-dd";
 		protected static final String STR_HEADER 		= "Header object: {id='%d', controlCommand='%s', reservedA='%s', reservedB='%s'}";
 		
@@ -92,6 +301,12 @@ public class CrptApi {
 		protected MsgCommand 	controlCommand;
 		protected String 		reservedA;
 		protected String 		reservedB;
+		protected Supplier<String> reservedBFactory;
+		protected byte[]		payload;
+		protected long			enqueuedNanos;
+		protected String		eventSource;
+		protected long			journalOffset	= -1L;
+		protected int			attempt			= 0;
 		
 		public static class Builder {
 			protected Long			id = 0L;
@@ -99,15 +314,26 @@ public class CrptApi {
 			protected String 		reservedA;
 			protected String 		reservedB;
 			
-			protected void validate() {
+			protected void collect(Validation validation) {
 				// Just some validation assumptions (i.e ID is not null) to return correct object.
 		    	// All checks have to be adjusted according concrete business implementation.
 		    	
-		    	var fields = new StringBuilder();
-		    	
-		    	if(id < 0) fields.append("id");
-		    				
-				if(fields.length() > 0) throw new IllegalArgumentException( String.format(STR_FIELD_EMPTY, fields.toString()) );
+		    	validation.check("id", id != null && id >= 0);
+			}
+			
+			protected void validate() {
+				var validation = new Validation();
+				collect(validation);
+				validation.throwIfInvalid();
+			}
+			
+			/**
+			 * @return all violations of fields set so far, empty list if object can be built
+			 */
+			public List<String> violations() {
+				var validation = new Validation();
+				collect(validation);
+				return validation.getViolations();
 			}
 			
 			public Builder() { }
@@ -170,13 +396,107 @@ public class CrptApi {
 			this.reservedA = reservedA;
 		}
 		
+		/**
+		 * @return reserved value, deferred one is rendered once by the first call (of any thread)
+		 */
 		@JsonIgnore
-		public String getReservedB() {
+		public synchronized String getReservedB() {
+			Supplier<String> factory = reservedBFactory;
+			
+			if(factory != null) {
+				reservedB = factory.get();
+				reservedBFactory = null;
+			}
 			return reservedB;
 		}
 		
-		public void setReservedB(String reservedB) {
+		public synchronized void setReservedB(String reservedB) {
 			this.reservedB = reservedB;
+			this.reservedBFactory = null;
+		}
+		
+		/**
+		 * Defers reserved value rendering until somebody reads it (i.e. trace data nobody is interested in is never built)
+		 * @param reservedBFactory - reserved value factory
+		 */
+		public synchronized void setReservedBFactory(Supplier<String> reservedBFactory) {
+			this.reservedB = null;
+			this.reservedBFactory = reservedBFactory;
+		}
+		
+		/**
+		 * @return message JSON representation serialized once by JsonCodec, null if it was not serialized yet
+		 */
+		@JsonIgnore
+		public byte[] getPayload() {
+			return payload;
+		}
+		
+		public void setPayload(byte[] payload) {
+			this.payload = payload;
+		}
+		
+		/**
+		 * @return time (System.nanoTime) message was put into processor queue, 0 if it was not
+		 */
+		@JsonIgnore
+		public long getEnqueuedNanos() {
+			return enqueuedNanos;
+		}
+		
+		public void setEnqueuedNanos(long enqueuedNanos) {
+			this.enqueuedNanos = enqueuedNanos;
+		}
+		
+		/**
+		 * @return name of thread the last event about message was triggered by
+		 */
+		@JsonIgnore
+		public String getEventSource() {
+			return eventSource;
+		}
+		
+		public void setEventSource(String eventSource) {
+			this.eventSource = eventSource;
+		}
+		
+		/**
+		 * @return offset of message record in DocumentJournal, -1 if message was not journaled
+		 */
+		@JsonIgnore
+		public long getJournalOffset() {
+			return journalOffset;
+		}
+		
+		public void setJournalOffset(long journalOffset) {
+			this.journalOffset = journalOffset;
+		}
+		
+		/**
+		 * @return quantity of sending attempts of message made so far
+		 */
+		@JsonIgnore
+		public int getAttempt() {
+			return attempt;
+		}
+		
+		public void setAttempt(int attempt) {
+			this.attempt = attempt;
+		}
+		
+		/**
+		 * @return shallow copy of message of the same class - snapshot of its state (i.e. for asynchronous events),
+		 * message might go on changing while the copy is used
+		 */
+		public synchronized Header copy() {
+			try {
+				Header result = (Header)super.clone();
+				// deferred value is rendered once - by the copy or by the message, whichever reads it first
+				if(reservedBFactory != null) result.reservedBFactory = this::getReservedB;
+				return result;
+			}catch(CloneNotSupportedException ex) {
+				throw new AssertionError(ex);
+			}
 		}
 		
 		@Override
@@ -194,8 +514,7 @@ public class CrptApi {
 			private String participantInn;
 			
 			public Description(String participantInn) {
-				if(participantInn != null && !participantInn.matches(STR_REGEXP_NUMBER))
-					throw new IllegalArgumentException( String.format(STR_FIELD_EMPTY, participantInn) );
+				new Validation().check("participantInn", participantInn, Validation.DIGITS).throwIfInvalid();
 				this.participantInn = participantInn;
 			}
 			
@@ -221,22 +540,31 @@ public class CrptApi {
 			    private String tnvedCode;
 			    private String uitCode;
 			    private String uituCode;
+			    private Validation.Rule innRule = Validation.DIGITS;
 			    
-			    private void validate() {
+			    private void collect(Validation validation) {
 			    	// Just some validation assumptions (i.e ID is not null) to return correct object.
 			    	// All checks have to be adjusted according concrete business implementation.
-			    	
-			    	var fields = new StringBuilder();
-					
-					if(certificateDocumentNumber != null) {
-						// assume this "Number" means digits & letters - no error
-					}
-					if( ownerInn != null && !ownerInn.matches(STR_REGEXP_NUMBER) ) 
-						fields.append("ownerInn, ");
-					if( producerInn != null && !producerInn.matches(STR_REGEXP_NUMBER) ) 
-						fields.append("producerInn, ");
 					
-					if(fields.length() > 0) throw new IllegalArgumentException(String.format(STR_FIELD_EMPTY, fields.toString()));
+					// certificateDocumentNumber - assume this "Number" means digits & letters - no error
+			    	validation
+			    		.check("ownerInn", ownerInn, innRule)
+			    		.check("producerInn", producerInn, innRule);
+			    }
+			    
+			    private void validate() {
+			    	var validation = new Validation();
+			    	collect(validation);
+			    	validation.throwIfInvalid();
+			    }
+			    
+			    /**
+			     * @return all violations of fields set so far, empty list if object can be built
+			     */
+			    public List<String> violations() {
+			    	var validation = new Validation();
+			    	collect(validation);
+			    	return validation.getViolations();
 			    }
 			    
 				public Builder() {
@@ -288,6 +616,15 @@ public class CrptApi {
 					return this;
 				}
 				
+				/**
+				 * @param strictInn - INN fields have to be valid taxpayer numbers (length, check digits), 
+				 * not just digits
+				 */
+				public Builder strictInn(boolean strictInn) {
+					this.innRule = strictInn ? Validation.INN : Validation.DIGITS;
+					return this;
+				}
+				
 				public Product build() {
 					validate();
 					return new Product(this);
@@ -403,29 +740,21 @@ public class CrptApi {
 		    private List<Product> products;
 		    private LocalDate regDate;
 		    private String regNumber;
+		    private Validation.Rule innRule = Validation.DIGITS;
 		    
-		    protected void validate() {
+		    @Override
+		    protected void collect(Validation validation) {
 		    	// Just some validation assumptions (i.e ID is not null) to return correct object.
 		    	// All checks have to be adjusted according concrete business implementation.
 		    	
-		    	super.validate();
-		    	
-		    	var fields = new StringBuilder();
+		    	super.collect(validation);
 		    	
-		    	if(description == null) description = new Description(null);
-		    	if( ownerInn != null && !ownerInn.matches(STR_REGEXP_NUMBER) ) {
-		    		// if INN is not declared number sequence - bad data, error
-					fields.append("ownerInn, ");
-		    	}
-		    	if( participantInn != null && !participantInn.matches(STR_REGEXP_NUMBER) ) 
-					fields.append("participantInn, ");
-		    	if( producerInn != null && !producerInn.matches(STR_REGEXP_NUMBER) ) 
-					fields.append("producerInn, ");
-		    	if( regNumber != null && !regNumber.matches(STR_REGEXP_NUMBER) ) 
-		    		fields.append("regNumber, ");
-				
-				
-				if(fields.length() > 0) throw new IllegalArgumentException(String.format(STR_FIELD_EMPTY, fields.toString()));
+		    	// if INN is not declared number sequence (valid taxpayer number in strict mode) - bad data, error
+		    	validation
+		    		.check("ownerInn", ownerInn, innRule)
+		    		.check("participantInn", participantInn, innRule)
+		    		.check("producerInn", producerInn, innRule)
+		    		.check("regNumber", regNumber, Validation.REG_NUMBER);
 		    }
 		    
 		    public Builder() {
@@ -456,11 +785,9 @@ public class CrptApi {
 				return this;
 			}
 		    
+		    // Description is immutable - no defensive copy needed
 		    public Builder description(Description description) {
-		    	if(description != null) {
-		    		this.description = new Description( description.getParticipantInn() );
-		    	} else this.description = null;
-		    	
+		    	this.description = description;
 		    	return this;
 		    }
 		    
@@ -509,27 +836,9 @@ public class CrptApi {
 		    	return this;
 		    }
 		    
+		    // Product is immutable and validated by its builder already, so shallow unmodifiable copy of list is enough
 		    public Builder products(List<Product> products) {
-		    	List<Product> result = null;
-		    	
-		    	if(products != null) {
-		    		result = new ArrayList<>();
-		    		for(Product p : products) {
-		    			result.add( new Product.Builder()
-		    				.certificateDocument(p.getCertificateDocument())
-		    				.certificateDocumentDate(p.getCertificateDocumentDate())
-		    				.certificateDocumentNumber(p.getCertificateDocumentNumber())
-		    				.ownerInn(p.getOwnerInn())
-		    				.producerInn(p.getProducerInn())
-		    				.productionDate(p.getProductionDate())
-		    				.tnvedCode(p.getTnvedCode())
-		    				.uitCode(p.getUitCode())
-		    				.uituCode(p.getUituCode())
-		    				.build() );
-		    		}
-		    	}
-		    	
-		    	this.products = result;
+		    	this.products = (products != null) ? List.copyOf(products) : null;
 		    	return this;
 		    }
 		    
@@ -542,8 +851,18 @@ public class CrptApi {
 		    	this.regNumber = regNumber;
 		    	return this;
 		    }
+		    
+		    /**
+		     * @param strictInn - INN fields have to be valid taxpayer numbers (length, check digits), not just digits
+		     */
+		    public Builder strictInn(boolean strictInn) {
+		    	this.innRule = strictInn ? Validation.INN : Validation.DIGITS;
+		    	return this;
+		    }
 			
 		    public Document build() {
+		    	if(description == null) description = new Description(null);
+		    	
 		    	validate();
 		    	return new Document(this);
 		    }
@@ -575,7 +894,7 @@ public class CrptApi {
 	    private String producerInn;
 	    private LocalDate productionDate;
 	    private String productionType;
-	    private List<Product> products = new ArrayList<>();
+	    private List<Product> products;
 	    private LocalDate regDate;
 	    private String regNumber;
 	    
@@ -599,8 +918,7 @@ public class CrptApi {
 	    
 	    @JsonGetter("description")
 	    public Description getDescription() {
-	    	if(description != null) return new Description( description.getParticipantInn() );
-	    	else return null;
+	    	return description;
 	    }
 	    
 	    @JsonGetter("doc_id")
@@ -649,28 +967,10 @@ public class CrptApi {
 	    	return productionType;
 	    }
 	    
+	    // unmodifiable view, called by JSON serializer on each send - must not copy or validate anything
 	    @JsonGetter("products")
 	    public List<Product> getProducts(){
-	    	List<Product> result = null;
-	    	
-	    	if(products != null) {
-	    		result = new ArrayList<>();
-	    		for(Product p : products) {
-	    			result.add( new Product.Builder()
-	    				.certificateDocument(p.getCertificateDocument())
-	    				.certificateDocumentDate(p.getCertificateDocumentDate())
-	    				.certificateDocumentNumber(p.getCertificateDocumentNumber())
-	    				.ownerInn(p.getOwnerInn())
-	    				.producerInn(p.getProducerInn())
-	    				.productionDate(p.getProductionDate())
-	    				.tnvedCode(p.getTnvedCode())
-	    				.uitCode(p.getUitCode())
-	    				.uituCode(p.getUituCode())
-	    				.build() );
-	    		}
-	    	}
-	    	
-	    	return result;
+	    	return products;
 	    }
 	    
 	    @JsonGetter("reg_date")
@@ -684,6 +984,66 @@ public class CrptApi {
 	    	return regNumber;
 	    }
 	    
+	    protected static String text(JsonNode node, String field) {
+	    	JsonNode value = node.get(field);
+	    	return (value != null && !value.isNull()) ? value.asText() : null;
+	    }
+	    
+	    protected static LocalDate date(JsonNode node, String field) {
+	    	String value = text(node, field);
+	    	return (value != null) ? LocalDate.parse(value) : null;
+	    }
+	    
+	    /**
+	     * Restores document from its JSON representation (i.e. DocumentJournal record) via builder, so it is validated again
+	     * @param id - document header id
+	     * @param json - document JSON bytes
+	     */
+	    public static Document fromJson(long id, byte[] json) throws IOException {
+	    	JsonNode root = JsonCodec.getMapper().readTree(json);
+	    	
+	    	List<Product> products = null;
+	    	JsonNode productsNode = root.get("products");
+	    	if(productsNode != null && productsNode.isArray()) {
+	    		products = new ArrayList<>( productsNode.size() );
+	    		for(JsonNode node : productsNode) {
+	    			products.add( new Product.Builder()
+	    					.certificateDocument( text(node, "certificate_document") )
+	    					.certificateDocumentDate( date(node, "certificate_document_date") )
+	    					.certificateDocumentNumber( text(node, "certificate_document_number") )
+	    					.ownerInn( text(node, "owner_inn") )
+	    					.producerInn( text(node, "producer_inn") )
+	    					.productionDate( date(node, "production_date") )
+	    					.tnvedCode( text(node, "tnved_code") )
+	    					.uitCode( text(node, "uit_code") )
+	    					.uituCode( text(node, "uitu_code") )
+	    					.build() );
+	    		}
+	    	}
+	    	
+	    	JsonNode descriptionNode = root.get("description");
+	    	JsonNode importRequest = root.get("importRequest");
+	    	
+	    	return new Builder()
+	    			.id(id)
+	    			.controlCommand(MsgCommand.DATA)
+	    			.description( (descriptionNode != null && !descriptionNode.isNull()) ? 
+	    					new Description( text(descriptionNode, "participantInn") ) : null )
+	    			.docId( text(root, "doc_id") )
+	    			.docStatus( text(root, "doc_status") )
+	    			.docType( text(root, "doc_type") )
+	    			.importRequest( (importRequest != null && !importRequest.isNull()) ? importRequest.asBoolean() : null )
+	    			.ownerInn( text(root, "owner_inn") )
+	    			.participantInn( text(root, "participant_inn") )
+	    			.producerInn( text(root, "producer_inn") )
+	    			.productionDate( date(root, "production_date") )
+	    			.productionType( text(root, "production_type") )
+	    			.products(products)
+	    			.regDate( date(root, "reg_date") )
+	    			.regNumber( text(root, "reg_number") )
+	    			.build();
+	    }
+	    
 	    @Override
 	    public String toString() {
 	    	String strProducts = STR_EMPTY;
@@ -703,510 +1063,6266 @@ public class CrptApi {
 	    }
 	}
 	
-	public static class DocumentGenerator implements Supplier<Document> {
-		protected String generateStrNum(int length) {
-			assert length > 0 && length < 100;
-			
-			var num = Math.round( Math.random() * Math.pow(10, length) );
-			return Long.valueOf(num).toString();
-		}
+	/**
+	 * Shared JSON serialization component - one ObjectMapper (modules are looked up once) with cached ObjectWriters.
+	 * Message is serialized once, the bytes are kept by message itself and reused for HTTP body and trace data.
+	 */
+	public static class JsonCodec {
+		private static final ObjectMapper							mapper	= new ObjectMapper().findAndRegisterModules();
+		private static final ConcurrentMap<Class<?>, ObjectWriter>	writers	= new ConcurrentHashMap<>();
 		
-		protected String generateString(int length) {
-			var result = new StringBuilder();
-			
-			for(int i=0; i<length; i++) {
-				result.append( (char)(Math.round(Math.random() * 93) + 33) );
-			}
-			return result.toString();
-		}
+		private JsonCodec() { }
 		
-		protected LocalDate generateDate() {
-			return LocalDate.of(2023, (int)Math.round(Math.random() * 11 + 1), (int)Math.round(Math.random() * 27 + 1));
+		public static ObjectMapper getMapper() {
+			return mapper;
 		}
 		
-		protected boolean generateBool() {
-			if(Long.valueOf(Math.round(Math.random() * 10)).intValue() %2 == 0) return true;
-			else return false;
+		public static ObjectWriter getWriter(Class<?> type) {
+			return writers.computeIfAbsent(type, mapper::writerFor);
 		}
 		
-		protected Document generateDocument() {
-			int strLen = 33, numLen = 10;
-			
-			var productA = new Document.Product.Builder()
-				.certificateDocument( generateString(strLen) )
-				.certificateDocumentDate( generateDate() )
-				.certificateDocumentNumber( generateStrNum(numLen) )
-				.ownerInn( generateStrNum(numLen) )
-				.producerInn( generateStrNum(numLen) )
-				.productionDate( generateDate() )
-				.tnvedCode( generateStrNum(numLen) )
-				.uitCode( generateString(strLen) )
-				.uituCode( generateString(strLen) )
-				.build();
-			
-			/*var productB = new Document.Product.Builder()
-					.certificateDocument( testGenerateString(strLen) )
-					.certificateDocumentDate( testGenerateStrDate() )
-					.certificateDocumentNumber( testGenerateStrNum(numLen) )
-					.ownerInn( productA.getOwnerInn() )
-					.producerInn( productA.getProducerInn() )
-					.productionDate( productA.getProductionDate() )
-					.tnvedCode( testGenerateStrNum(numLen) )
-					.uitCode( testGenerateString(strLen) )
-					.uituCode( testGenerateString(strLen) )
-					.build();*/
-			
-			List<Document.Product> products = new ArrayList<>();
-			products.add(productA);
-			//products.add(productB);
-			
-			String docId = generateStrNum(numLen);
-			
-			Document document = new Document.Builder()
-					.id( Long.parseLong(docId) )
-					.controlCommand(MsgCommand.DATA)
-					.description( new Document.Description(generateStrNum(numLen)) )
-					.docId(docId)
-					.docStatus( generateString(strLen) )
-					.docType("LP_INTRODUCE_GOODS")
-					.importRequest( generateBool() )
-					.ownerInn( productA.getOwnerInn() )
-					.participantInn( generateStrNum(numLen) )
-					.producerInn( productA.producerInn )
-					.productionDate( productA.getProductionDate() )
-					.productionType( generateString(strLen) )
-					.products(products)
-					.regDate( generateDate() )
-					.regNumber( generateStrNum(numLen) )
-					.build();
-			
-			return document;
-		}
-
-		@Override
-		public Document get() {
-			Document result = null;
+		/**
+		 * Serializes message to JSON bytes, serialized once bytes are returned for subsequent calls.
+		 * Message body fields have to be immutable (as Document ones are) - header fields are not serialized.
+		 * @param message - message (document)
+		 */
+		public static byte[] toBytes(Header message) throws JsonProcessingException {
+			byte[] result = message.getPayload();
 			
-			synchronized (this) {
-				result = generateDocument();
+			if(result == null) {
+				result = getWriter( message.getClass() ).writeValueAsBytes(message);
+				message.setPayload(result);
 			}
 			
 			return result;
 		}
+		
+		public static String toJson(Header message) throws JsonProcessingException {
+			return new String( toBytes(message), StandardCharsets.UTF_8 );
+		}
+		
+		/**
+		 * @return RestTemplate message converter sharing the mapper
+		 */
+		public static MappingJackson2HttpMessageConverter createMessageConverter() {
+			return new MappingJackson2HttpMessageConverter(mapper);
+		}
 	}
 	
 	/**
-	 * RestTemplate object factory for complex HTTPS creation.
-	 * For convenience is used "Double Checked Locking & volatile" thread safe singletone pattern
+	 * Durable write-ahead log of messages (documents) accepted by processor: append-only memory-mapped segment files
+	 * of [int length, long id, int certificate length, certificate bytes, JSON bytes] records plus checkpoint file
+	 * keeping acknowledge offset. Certificate (reservedA) is kept by record as it is not a part of JSON, so replayed
+	 * and spilled messages are authorized as the original ones.
+	 * Acknowledge offset is advanced contiguously - it points at the oldest record not acknowledged yet,
+	 * so records beyond it are replayed after restart (at-least-once delivery - records acknowledged out of order
+	 * beyond the offset are replayed as well). Written record survives JVM crash as soon as it is appended
+	 * (it is in OS page cache), sync thread forces segments to disk in groups every sync interval - appender
+	 * may wait for the group its record belongs to is forced (group commit) to survive OS crash as well.
+	 * Fully acknowledged segments are deleted by sync thread.
+	 *
+	 * @param <T> - message (document) type
 	 */
-	public static class RestTemplateFactory {
+	public static class DocumentJournal<T extends Header> implements AutoCloseable {
+		protected static final String STR_SEGMENT_FILE		= "%020d.seg";
+		protected static final String STR_SEGMENT_SUFFIX	= ".seg";
+		protected static final String STR_CHECKPOINT_FILE	= "ack.chk";
+		protected static final String STR_THREAD_SYNC		= "DocumentJournal-sync";
+		protected static final String STR_RECORD_TOO_LONG	= "Record of %d bytes does not fit journal segment of %d bytes";
+		protected static final String STR_JOURNAL_CLOSED	= "Journal is closed";
+		protected static final String STR_SYNC_FAILED		= "Journal records were not forced to disk";
+		protected static final String STR_RECORD_BROKEN		= "Record at %d has certificate of %d bytes beyond its length %d";
+		protected static final int	  INT_RECORD_HEADER		= Integer.BYTES + Long.BYTES + Integer.BYTES;
+		protected static final int	  INT_SEGMENT_SIZE		= 64 * 1024 * 1024;
+		protected static final long	  LONG_SYNC_INTERVAL	= 10L;
 		
-		private static volatile RestTemplate restTemplate = null;
+		/**
+		 * Message decoder of journal record
+		 */
+		@FunctionalInterface
+		public static interface Decoder<T> {
+			T decode(long id, byte[] json) throws IOException;
+		}
 		
-		private RestTemplateFactory() { }
+		protected static class Segment {
+			protected final long				base;
+			protected final int					capacity;
+			protected final Path				path;
+			protected final FileChannel			channel;
+			protected final MappedByteBuffer	buffer;
+			
+			protected Segment(Path path, long base, int capacity) throws IOException {
+				this.base		= base;
+				this.capacity	= capacity;
+				this.path		= path;
+				this.channel	= FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				this.buffer		= channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+			}
+			
+			protected long end() {
+				return base + capacity;
+			}
+			
+			protected void close() throws IOException {
+				channel.close();
+			}
+		}
+		
+		protected final Path									directory;
+		protected final int										segmentSize;
+		protected final long									syncIntervalNanos;
+		protected final boolean									syncOnAppend;
+		protected final Decoder<T>								decoder;
+		protected final ConcurrentSkipListMap<Long, Segment>	segments	= new ConcurrentSkipListMap<>();
+		protected final ConcurrentSkipListSet<Long>				pending		= new ConcurrentSkipListSet<>();
+		protected final ConcurrentSkipListSet<Long>				spilled		= new ConcurrentSkipListSet<>();
+		protected final ReentrantLock							appendLock	= new ReentrantLock();
+		protected final ReentrantLock							syncLock	= new ReentrantLock();
+		protected final Condition								syncRequested = syncLock.newCondition();
+		protected final Condition								synced		= syncLock.newCondition();
+		protected final Segment									checkpoint;
+		protected final Thread									syncThread;
+		protected Segment										current;
+		protected List<T>										recovered	= new ArrayList<>();
+		protected volatile long									appendOffset;
+		protected volatile long									ackOffset;
+		protected volatile long									syncedOffset;
+		protected volatile boolean								closed		= false;
+		protected volatile boolean								syncStopped	= false;
+		// failure of the last sync, cleared by the next successful one
+		protected volatile IOException							syncError	= null;
+		protected int											syncWaiters	= 0;
 		
 		/**
-		 * Gets key store resource defined in application.properties file. 
-		 * It's just a stub have to be implemented in full-scale application such property value reading (@Value).
+		 * Opens journal with default segment size (64 Mb) and sync interval (10 ms), appender does not wait for sync
+		 * @param directory - journal directory, created if it does not exist
+		 * @param decoder - message decoder for records recovery
 		 */
-		private static Resource getKeyStoreResource() {
-			return null;
+		public DocumentJournal(Path directory, Decoder<T> decoder) throws IOException {
+			this(directory, INT_SEGMENT_SIZE, LONG_SYNC_INTERVAL, false, decoder);
 		}
 		
 		/**
-		 * Gets key store password defined in application.properties file. 
-		 * It's just a stub have to be implemented in full-scale application such property value reading (@Value).
+		 * Opens journal, reads records were not acknowledged before (see recover()) and starts sync thread
+		 * @param directory - journal directory, created if it does not exist
+		 * @param segmentSize - segment file size in bytes
+		 * @param syncIntervalMillis - maximal time between segments are forced to disk
+		 * @param syncOnAppend - appender waits for its record is forced to disk if true
+		 * @param decoder - message decoder for records recovery
 		 */
-		private static String getKeyStorePassword() {
-			return "pass";
+		public DocumentJournal(Path directory, int segmentSize, long syncIntervalMillis, boolean syncOnAppend, 
+				Decoder<T> decoder) throws IOException {
+			String strDirectory = "directory", strSegmentSize = "segmentSize", strSyncInterval = "syncIntervalMillis", 
+					strDecoder = "decoder";
+			
+			this.directory = Objects.requireNonNull(directory, strDirectory);
+			if(segmentSize <= INT_RECORD_HEADER) throw new IllegalArgumentException(strSegmentSize);
+			if(syncIntervalMillis < 1) throw new IllegalArgumentException(strSyncInterval);
+			this.segmentSize		= segmentSize;
+			this.syncIntervalNanos	= TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+			this.syncOnAppend		= syncOnAppend;
+			this.decoder			= Objects.requireNonNull(decoder, strDecoder);
+			
+			Files.createDirectories(directory);
+			checkpoint = new Segment( directory.resolve(STR_CHECKPOINT_FILE), 0L, Long.BYTES );
+			ackOffset = checkpoint.buffer.getLong(0);
+			
+			open();
+			syncedOffset = appendOffset;
+			
+			syncThread = new Thread(this::syncLoop, STR_THREAD_SYNC);
+			syncThread.setDaemon(true);
+			syncThread.start();
 		}
 		
 		/**
-		 * Constructs RestTemplate object for secured service API consumption (querying via HTTPS).
-		 * It's just sample implementation that may corrected in full-scale application and represented as bean (@bean).
+		 * Maps existing segments and scans records from acknowledge offset up to the end of the last one
 		 */
-		private static RestTemplate createHttpsRestTemplateObject() {
-			try {
-				var sslContext = new SSLContextBuilder()
-						.loadTrustMaterial( getKeyStoreResource().getURL(), getKeyStorePassword().toCharArray() )
-						.build();
-				
-				var sslConFactory = new SSLConnectionSocketFactory(sslContext);
-				var httpClient = HttpClients.custom().setSSLSocketFactory(sslConFactory).build();
-				var requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+		protected void open() throws IOException {
+			try( var files = Files.list(directory) ) {
+				for( Path path : (Iterable<Path>)files::iterator ) {
+					String name = path.getFileName().toString();
+					if( !name.endsWith(STR_SEGMENT_SUFFIX) ) continue;
+					
+					long base = Long.parseLong( name.substring(0, name.length() - STR_SEGMENT_SUFFIX.length()) );
+					int capacity = (int)Math.min( Files.size(path), Integer.MAX_VALUE );
+					if(capacity > INT_RECORD_HEADER) segments.put( base, new Segment(path, base, capacity) );
+				}
+			}
+			
+			if( segments.isEmpty() ) {
+				// nothing was journaled or everything was acknowledged and deleted - start where previous run stopped
+				current = newSegment(ackOffset);
+				appendOffset = ackOffset;
+				return;
+			}
+			
+			var entry = segments.floorEntry(ackOffset);
+			long pos = (entry != null) ? ackOffset : segments.firstKey();
+			if(entry == null) entry = segments.firstEntry();
+			
+			while(true) {
+				Segment segment = entry.getValue();
+				int offset = (int)(pos - segment.base);
+				int length = (offset + INT_RECORD_HEADER <= segment.capacity) ? segment.buffer.getInt(offset) : 0;
 				
-				return new RestTemplate(requestFactory);
-			}catch(Throwable ex) {
-				synchronized(System.err) {
-					ex.printStackTrace();
+				if(length > 0 && offset + INT_RECORD_HEADER + length <= segment.capacity) {
+					try {
+						recovered.add( read(segment, pos) );
+						pending.add(pos);
+					}catch(IOException | RuntimeException ex) {
+						// broken record can not be sent anyway - it is skipped (not pending) and acknowledged by the next ones
+						ex.printStackTrace();
+					}
+					
+					pos += INT_RECORD_HEADER + length;
+					continue;
 				}
-				return null;
+				
+				// no more records in this segment - the rest of it was left unused while rolling over
+				var next = segments.higherEntry(segment.base);
+				if(next == null) break;
+				entry = next;
+				pos = next.getKey();
 			}
+			
+			current = entry.getValue();
+			appendOffset = pos;
+			advanceAckOffset();
 		}
 		
-		public static RestTemplate getInstance() {
-			RestTemplate local = restTemplate;
-			if(local == null) {
-				synchronized (RestTemplateFactory.class) {
-					local = restTemplate;
-					// check other thread creates instance already
-					if(local == null) {
-						local = createHttpsRestTemplateObject();
-						restTemplate = local;
-					}
+		protected Segment newSegment(long base) throws IOException {
+			var segment = new Segment( directory.resolve(String.format(STR_SEGMENT_FILE, base)), base, segmentSize );
+			segments.put(base, segment);
+			return segment;
+		}
+		
+		/**
+		 * Appends message to journal, message gets journal offset to be acknowledged by
+		 * @param message - message (document), serialized by JsonCodec, its certificate (reservedA) is kept as well
+		 * @return journal offset of message record
+		 * @throws IOException - the last sync failed (records durability is lost) or sync on append failed
+		 */
+		public long append(T message) throws IOException {
+			String strMessage = "message";
+			Objects.requireNonNull(message, strMessage);
+			
+			IOException error = syncError;
+			if(error != null) throw new IOException(STR_SYNC_FAILED, error);
+			
+			byte[] json = JsonCodec.toBytes(message);
+			byte[] certificate = (message.getReservedA() != null) ? message.getReservedA().getBytes(StandardCharsets.UTF_8) : null;
+			int length = json.length + ( (certificate != null) ? certificate.length : 0 );
+			int recordLength = INT_RECORD_HEADER + length;
+			if(recordLength > segmentSize) throw new IllegalArgumentException( String.format(STR_RECORD_TOO_LONG, recordLength, segmentSize) );
+			
+			long pos;
+			appendLock.lock();
+			try {
+				if(closed) throw new IllegalStateException(STR_JOURNAL_CLOSED);
+				
+				if(appendOffset + recordLength > current.end()) {
+					current = newSegment( current.end() );
+					appendOffset = current.base;
 				}
+				
+				pos = appendOffset;
+				int offset = (int)(pos - current.base);
+				current.buffer.putLong( offset + Integer.BYTES, (message.getId() != null) ? message.getId() : 0L );
+				current.buffer.putInt( offset + Integer.BYTES + Long.BYTES, (certificate != null) ? certificate.length : -1 );
+				
+				var body = current.buffer.duplicate().position(offset + INT_RECORD_HEADER);
+				if(certificate != null) body.put(certificate);
+				body.put(json);
+				// length is written the last - record is not visible for recovery until it is complete
+				current.buffer.putInt(offset, length);
+				
+				message.setJournalOffset(pos);
+				pending.add(pos);
+				appendOffset = pos + recordLength;
+			}finally {
+				appendLock.unlock();
 			}
-			return restTemplate;
+			
+			if(syncOnAppend) awaitSync(pos + recordLength);
+			return pos;
 		}
-	}
-	
-	public static class RestTemplateMetadata {
-		public static enum Protocol {HTTP, HTTPS}
 		
-		public static class Builder {
-			protected static final String STR_FIELD_EMPTY 	= "There are null, empty or wrong value fields: %s";
+		/**
+		 * Group commit - waits for the next segments forcing covers given offset
+		 */
+		protected void awaitSync(long offset) throws IOException {
+			syncLock.lock();
+			try {
+				syncWaiters++;
+				syncRequested.signal();
+				while(syncedOffset < offset && !syncStopped && syncError == null) synced.await();
+				if(syncedOffset >= offset) return;
+				
+				IOException error = syncError;
+				throw (error != null) ? new IOException(STR_SYNC_FAILED, error) : new IOException(STR_JOURNAL_CLOSED);
+			}catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}finally {
+				syncWaiters--;
+				syncLock.unlock();
+			}
+		}
+		
+		/**
+		 * Acknowledges message was delivered - it is not replayed after restart anymore
+		 * @param message - message (document) was appended before, not journaled messages are ignored
+		 */
+		public void acknowledge(T message) {
+			long pos = message.getJournalOffset();
+			if(pos < 0) return;
 			
-			protected Protocol		protocol 	= Protocol.HTTPS;
-			protected String		serverName	= "my.company.com";
-			protected int			serverPort	= 80;
-			protected String		urlSuffix	= "suffix";
-			protected URI			baseUri		= null;
+			if( pending.remove(pos) ) advanceAckOffset();
+		}
+		
+		protected synchronized void advanceAckOffset() {
+			// append offset is read before pending set - any record below it is pending already or acknowledged
+			long appended = appendOffset;
+			Long oldest = pending.isEmpty() ? null : pending.first();
+			long offset = (oldest != null) ? oldest : appended;
 			
-			protected void validate() { 	    	
-		    	var fields = new StringBuilder();
-		    	
-		    	if( protocol   == null ) fields.append("protocol, ");
-		    	if( serverPort < 0 || serverPort > 65535 ) fields.append("serverPort, ");
-		    	
-		    	try {
-		    		baseUri = new URI(protocol.name().toLowerCase(), null, serverName, 
-							serverPort, "/" + urlSuffix, /*"query"*/ null, null );
-		    		assert baseUri != null;
-				} catch (URISyntaxException ex) {
-					fields.append( String.format("URI wrong syntax: '%s', ", ex.getMessage()) );
+			if(offset > ackOffset) {
+				ackOffset = offset;
+				checkpoint.buffer.putLong(0, offset);
+			}
+		}
+		
+		protected void syncLoop() {
+			while(true) {
+				syncLock.lock();
+				try {
+					if(!closed && syncWaiters == 0) syncRequested.awaitNanos(syncIntervalNanos);
+				}catch(InterruptedException ex) {
+					// closing - force the rest
+				}finally {
+					syncLock.unlock();
 				}
-		    	
-				if(fields.length() > 0) throw new IllegalArgumentException( String.format(STR_FIELD_EMPTY, fields.toString()) );
+				
+				try {
+					sync();
+				}catch(Throwable ex) {
+					// appenders get the failure - waiting ones are woken up, the next ones are rejected until sync succeeds
+					syncLock.lock();
+					try {
+						syncError = (ex instanceof IOException) ? (IOException)ex : new IOException(STR_SYNC_FAILED, ex);
+						synced.signalAll();
+					}finally {
+						syncLock.unlock();
+					}
+				}
+				
+				if(closed) break;
 			}
 			
-			public Builder() { }
-			
-			public Builder protocol(Protocol protocol) {
-				this.protocol = protocol;
-				return this;
+			syncLock.lock();
+			try {
+				syncStopped = true;
+				synced.signalAll();
+			}finally {
+				syncLock.unlock();
 			}
+		}
+		
+		/**
+		 * Forces appended records and acknowledge offset to disk, deletes fully acknowledged segments
+		 */
+		protected void sync() throws IOException {
+			long target = appendOffset;
+			long from = syncedOffset;
 			
-			public Builder serverName(String serverName) {
-				this.serverName = serverName;
-				return this;
+			if(target > from) {
+				for(Segment segment : segments.values()) {
+					if(segment.end() > from && segment.base < target) segment.buffer.force();
+				}
 			}
+			checkpoint.buffer.force();
 			
-			public Builder serverPort(int serverPort) {
-				this.serverPort = serverPort;
-				return this;
+			syncLock.lock();
+			try {
+				syncedOffset = target;
+				syncError = null;
+				synced.signalAll();
+			}finally {
+				syncLock.unlock();
 			}
 			
-			public Builder urlSuffix(String urlSuffix) {
-				this.urlSuffix = urlSuffix;
-				return this;
+			long acknowledged = ackOffset;
+			for(Segment segment : segments.values()) {
+				if(segment.end() > acknowledged || segment == current) break;
+				
+				segments.remove(segment.base);
+				segment.close();
+				Files.deleteIfExists(segment.path);
 			}
+		}
+		
+		/**
+		 * Marks appended message as spilled - it is kept by journal only (not in memory) until pollSpilled() reads it back
+		 * @param message - message (document) was appended before
+		 */
+		public void markSpilled(T message) {
+			String strMessage = "message";
+			if(message.getJournalOffset() < 0) throw new IllegalArgumentException(strMessage);
 			
-			public RestTemplateMetadata build() {
-				validate();
-				return new RestTemplateMetadata(this);
+			spilled.add( message.getJournalOffset() );
+		}
+		
+		/**
+		 * Read cursor over spilled messages - reads back the oldest one. Broken record is acknowledged and skipped.
+		 * @return spilled message, null if there are no ones
+		 */
+		public T pollSpilled() {
+			while(true) {
+				Long pos = spilled.pollFirst();
+				if(pos == null) return null;
+				
+				try {
+					return read(pos);
+				}catch(IOException | RuntimeException ex) {
+					ex.printStackTrace();
+					if( pending.remove(pos) ) advanceAckOffset();
+				}
 			}
 		}
 		
-		protected Protocol		protocol;
-		protected String		serverName;
-		protected int			serverPort;
-		protected String		urlSuffix;
-		protected URI			baseUri;
+		public boolean hasSpilled() {
+			return !spilled.isEmpty();
+		}
 		
-		private RestTemplateMetadata(Builder builder) {
-			assert builder != null;
+		/**
+		 * Reads and decodes record, it has to be not acknowledged yet (its segment is not deleted)
+		 * @param pos - record offset
+		 */
+		protected T read(long pos) throws IOException {
+			return read( segments.floorEntry(pos).getValue(), pos );
+		}
+		
+		/**
+		 * Decodes record of segment, message gets its certificate back
+		 */
+		protected T read(Segment segment, long pos) throws IOException {
+			int offset = (int)(pos - segment.base);
+			int length = segment.buffer.getInt(offset);
+			long id = segment.buffer.getLong(offset + Integer.BYTES);
+			int certificateLength = segment.buffer.getInt(offset + Integer.BYTES + Long.BYTES);
+			if(certificateLength > length) throw new IOException( String.format(STR_RECORD_BROKEN, pos, certificateLength, length) );
 			
-			protocol 	= builder.protocol;
-			serverName	= builder.serverName;
-			serverPort 	= builder.serverPort;
-			urlSuffix 	= builder.urlSuffix;
-			baseUri		= builder.baseUri;
+			var body = segment.buffer.duplicate().position(offset + INT_RECORD_HEADER);
+			String certificate = null;
+			if(certificateLength >= 0) {
+				byte[] bytes = new byte[certificateLength];
+				body.get(bytes);
+				certificate = new String(bytes, StandardCharsets.UTF_8);
+			}
+			
+			byte[] json = new byte[ length - Math.max(certificateLength, 0) ];
+			body.get(json);
+			
+			T message = decoder.decode(id, json);
+			message.setReservedA(certificate);
+			message.setPayload(json);
+			message.setJournalOffset(pos);
+			return message;
 		}
 		
-		public Protocol getProtocol() {
-			return protocol;
+		/**
+		 * @return messages were appended but not acknowledged before journal opening, in append order.
+		 * The list is handed over once - the next calls return empty list.
+		 */
+		public synchronized List<T> recover() {
+			List<T> result = recovered;
+			recovered = new ArrayList<>();
+			return result;
 		}
 		
-		public String getServerName() {
-			return serverName;
+		public long getAppendOffset() {
+			return appendOffset;
 		}
 		
-		public int getServerPort() {
-			return serverPort;
+		public long getAckOffset() {
+			return ackOffset;
 		}
 		
-		public String getUrlSuffix() {
-			return urlSuffix;
+		public long getSyncedOffset() {
+			return syncedOffset;
 		}
 		
-		public URI getBaseUri() {
-			return baseUri;
+		/**
+		 * @return quantity of appended records not acknowledged yet
+		 */
+		public int getPendingCount() {
+			return pending.size();
 		}
 		
+		/**
+		 * Forces everything appended to disk and closes segment files. Caller interruption does not break closing
+		 * (segments are not unmapped while sync thread might use them) - it is restored for caller after it.
+		 * @throws IOException - the last sync failed, records might be not durable
+		 */
 		@Override
-		public String toString() {
-			return baseUri.toString();
-		}
-	}
-	
-	public static class RestMetadataChestnyZnak extends RestTemplateMetadata {
-		public static class Builder extends RestTemplateMetadata.Builder {
-			
-			protected String baseQuery		= "pg=milk";
-			protected String documentSuffix	= "documents";
-			protected String createAction	= "create";
-			
-			protected void validate() {
-				super.validate();
-				
-				var fields = new StringBuilder();
-		    	
-		    	if( documentSuffix == null ) fields.append("documentSuffix, ");
-		    	if( createAction   == null ) fields.append("createAction, ");
-				
-				if(fields.length() > 0) throw new IllegalArgumentException( String.format(STR_FIELD_EMPTY, fields.toString()) );
-			}
-			
-			public Builder() { super(); }
-			
-			@Override
-			public Builder protocol(Protocol protocol) {
-				super.protocol(protocol);
-				return this;
+		public void close() throws IOException {
+			appendLock.lock();
+			try {
+				if(closed) return;
+				closed = true;
+			}finally {
+				appendLock.unlock();
 			}
 			
-			@Override
-			public Builder serverName(String serverName) {
-				super.serverName(serverName);
-				return this;
+			syncThread.interrupt();
+			boolean interrupted = false;
+			while( syncThread.isAlive() ) {
+				try {
+					syncThread.join();
+				}catch(InterruptedException ex) {
+					interrupted = true;
+				}
 			}
+			if(interrupted) Thread.currentThread().interrupt();
 			
-			@Override
-			public Builder serverPort(int serverPort) {
-				super.serverPort(serverPort);
-				return this;
-			}
+			for(Segment segment : segments.values()) segment.close();
+			checkpoint.close();
 			
-			@Override
-			public Builder urlSuffix(String urlSuffix) {
-				super.urlSuffix(urlSuffix);
-				return this;
-			}
+			IOException error = syncError;
+			if(error != null) throw new IOException(STR_SYNC_FAILED, error);
+		}
+	}
+	
+	public static class DocumentGenerator implements Supplier<Document> {
+		protected String generateStrNum(int length) {
+			assert length > 0 && length < 100;
 			
-			public Builder baseQuery(String baseQuery) {
-				this.baseQuery = baseQuery;
-				return this;
-			}
+			var num = Math.round( Math.random() * Math.pow(10, length) );
+			return Long.valueOf(num).toString();
+		}
+		
+		/**
+		 * Generates valid legal entity taxpayer number - 9 random digits and check digit
+		 */
+		protected String generateInn() {
+			var result = new StringBuilder(10);
 			
-			public Builder documentSuffix(String documentSuffix) {
-				this.documentSuffix = documentSuffix;
-				return this;
-			}
+			for(int i=0; i<9; i++) result.append( (char)('0' + (int)(Math.random() * 10)) );
+			result.append( (char)('0' + Validation.innCheckDigit(result, Validation.INN10_WEIGHTS)) );
 			
-			public Builder createAction(String createAction) {
-				this.createAction = createAction;
-				return this;
-			}
+			return result.toString();
+		}
+		
+		protected String generateString(int length) {
+			var result = new StringBuilder();
 			
-			public RestMetadataChestnyZnak build() {
-				validate();
-				return new RestMetadataChestnyZnak(this);
+			for(int i=0; i<length; i++) {
+				result.append( (char)(Math.round(Math.random() * 93) + 33) );
 			}
+			return result.toString();
 		}
 		
-		protected String baseQuery;
-		protected String documentSuffix;
-		protected String createAction;
-		
-		private RestMetadataChestnyZnak(Builder builder) {
-			super(builder);
-			
-			baseQuery		= builder.baseQuery;
-			documentSuffix 	= builder.documentSuffix;
-			createAction 	= builder.createAction;
+		protected LocalDate generateDate() {
+			return LocalDate.of(2023, (int)Math.round(Math.random() * 11 + 1), (int)Math.round(Math.random() * 27 + 1));
 		}
 		
-		public String getBaseQuery() {
-			return baseQuery;
+		protected boolean generateBool() {
+			if(Long.valueOf(Math.round(Math.random() * 10)).intValue() %2 == 0) return true;
+			else return false;
 		}
 		
-		public String getDocumentSuffix() {
+		protected Document generateDocument() {
+			int strLen = 33, numLen = 10;
+			
+			var productA = new Document.Product.Builder()
+				.certificateDocument( generateString(strLen) )
+				.certificateDocumentDate( generateDate() )
+				.certificateDocumentNumber( generateStrNum(numLen) )
+				.ownerInn( generateInn() )
+				.producerInn( generateInn() )
+				.productionDate( generateDate() )
+				.tnvedCode( generateStrNum(numLen) )
+				.uitCode( generateString(strLen) )
+				.uituCode( generateString(strLen) )
+				.strictInn(true)
+				.build();
+			
+			/*var productB = new Document.Product.Builder()
+					.certificateDocument( testGenerateString(strLen) )
+					.certificateDocumentDate( testGenerateStrDate() )
+					.certificateDocumentNumber( testGenerateStrNum(numLen) )
+					.ownerInn( productA.getOwnerInn() )
+					.producerInn( productA.getProducerInn() )
+					.productionDate( productA.getProductionDate() )
+					.tnvedCode( testGenerateStrNum(numLen) )
+					.uitCode( testGenerateString(strLen) )
+					.uituCode( testGenerateString(strLen) )
+					.build();*/
+			
+			List<Document.Product> products = new ArrayList<>();
+			products.add(productA);
+			//products.add(productB);
+			
+			String docId = generateStrNum(numLen);
+			
+			Document document = new Document.Builder()
+					.id( Long.parseLong(docId) )
+					.controlCommand(MsgCommand.DATA)
+					.description( new Document.Description(generateInn()) )
+					.docId(docId)
+					.docStatus( generateString(strLen) )
+					.docType("LP_INTRODUCE_GOODS")
+					.importRequest( generateBool() )
+					.ownerInn( productA.getOwnerInn() )
+					.participantInn( generateInn() )
+					.producerInn( productA.producerInn )
+					.productionDate( productA.getProductionDate() )
+					.productionType( generateString(strLen) )
+					.products(products)
+					.regDate( generateDate() )
+					.regNumber( generateStrNum(numLen) )
+					.strictInn(true)
+					.build();
+			
+			return document;
+		}
+
+		@Override
+		public Document get() {
+			Document result = null;
+			
+			synchronized (this) {
+				result = generateDocument();
+			}
+			
+			return result;
+		}
+	}
+	
+	/**
+	 * Pooled HTTP(S) connections layer - RestTemplate over keep-alive connections pool with idle/expired connections
+	 * eviction and TLS sessions caching. Pool statistics might be polled for monitoring purposes.
+	 */
+	public static class HttpConnectionPool implements AutoCloseable {
+		protected PoolingHttpClientConnectionManager	connectionManager;
+		protected CloseableHttpClient					httpClient;
+		protected RestTemplate							restTemplate;
+		
+		protected HttpConnectionPool(PoolingHttpClientConnectionManager connectionManager, CloseableHttpClient httpClient) {
+			assert connectionManager != null && httpClient != null;
+			
+			this.connectionManager	= connectionManager;
+			this.httpClient			= httpClient;
+			this.restTemplate		= new RestTemplate( new HttpComponentsClientHttpRequestFactory(httpClient) );
+			
+			// JSON is written by shared mapper instead of RestTemplate own one
+			var converters = restTemplate.getMessageConverters();
+			converters.removeIf(converter -> converter instanceof MappingJackson2HttpMessageConverter);
+			converters.add( JsonCodec.createMessageConverter() );
+		}
+		
+		public RestTemplate getRestTemplate() {
+			return restTemplate;
+		}
+		
+		/**
+		 * @return pool statistics totals - leased, pending, available connections and maximum
+		 */
+		public PoolStats getTotalStats() {
+			return connectionManager.getTotalStats();
+		}
+		
+		/**
+		 * @return pool statistics per route (i.e. per remote API host)
+		 */
+		public Map<HttpRoute, PoolStats> getRouteStats() {
+			Map<HttpRoute, PoolStats> result = new HashMap<>();
+			for(HttpRoute route : connectionManager.getRoutes()) result.put( route, connectionManager.getStats(route) );
+			
+			return result;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			// stops idle connections evictor as well
+			httpClient.close();
+		}
+	}
+	
+	/**
+	 * RestTemplate object factory for complex HTTPS creation.
+	 * For convenience is used "Double Checked Locking & volatile" thread safe singletone pattern
+	 */
+	public static class RestTemplateFactory {
+		
+		private static volatile HttpConnectionPool connectionPool = null;
+		
+		private RestTemplateFactory() { }
+		
+		/**
+		 * Gets key store resource defined in application.properties file. 
+		 * It's just a stub have to be implemented in full-scale application such property value reading (@Value).
+		 */
+		private static Resource getKeyStoreResource() {
+			return null;
+		}
+		
+		/**
+		 * Gets key store password defined in application.properties file. 
+		 * It's just a stub have to be implemented in full-scale application such property value reading (@Value).
+		 */
+		private static String getKeyStorePassword() {
+			return "pass";
+		}
+		
+		/**
+		 * Constructs SSL context trusting key store material, shared with asynchronous HTTP client factory.
+		 */
+		static SSLContext createSslContext() throws Exception {
+			return new SSLContextBuilder()
+					.loadTrustMaterial( getKeyStoreResource().getURL(), getKeyStorePassword().toCharArray() )
+					.build();
+		}
+		
+		/**
+		 * Keeps connection alive as long as server allows ('Keep-Alive' response header), but not longer than configured
+		 */
+		private static ConnectionKeepAliveStrategy createKeepAliveStrategy(long keepAliveMillis) {
+			return (response, context) -> {
+				long serverMillis = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+				return (serverMillis > 0) ? Math.min(serverMillis, keepAliveMillis) : keepAliveMillis;
+			};
+		}
+		
+		/**
+		 * Constructs pooled connections layer for service API consumption according metadata settings.
+		 * HTTPS connections are only registered for HTTPS protocol, so plain HTTP (i.e. local stub server) needs no key store.
+		 * @param metadata - remote API metadata including pool settings
+		 */
+		public static HttpConnectionPool createConnectionPool(RestTemplateMetadata metadata) throws Exception {
+			String strMetadata = "metadata";
+			Objects.requireNonNull(metadata, strMetadata);
+			
+			var registry = RegistryBuilder.<ConnectionSocketFactory>create()
+					.register( "http", PlainConnectionSocketFactory.getSocketFactory() );
+			
+			if(metadata.getProtocol() == RestTemplateMetadata.Protocol.HTTPS) {
+				var sslContext = createSslContext();
+				
+				// reuse TLS sessions - abbreviated handshake for new pooled connections
+				var sessionContext = sslContext.getClientSessionContext();
+				sessionContext.setSessionCacheSize( metadata.getTlsSessionCacheSize() );
+				sessionContext.setSessionTimeout( metadata.getTlsSessionTimeoutSeconds() );
+				
+				registry.register( "https", new SSLConnectionSocketFactory(sslContext) );
+			}
+			
+			var connectionManager = new PoolingHttpClientConnectionManager( registry.build(), null, null, null,
+					metadata.getConnectionTtlMillis(), TimeUnit.MILLISECONDS );
+			connectionManager.setMaxTotal( metadata.getPoolMaxTotal() );
+			connectionManager.setDefaultMaxPerRoute( metadata.getPoolMaxPerRoute() );
+			connectionManager.setValidateAfterInactivity( metadata.getValidateAfterInactivityMillis() );
+			
+			var httpClient = HttpClients.custom()
+					.setConnectionManager(connectionManager)
+					.setKeepAliveStrategy( createKeepAliveStrategy(metadata.getKeepAliveMillis()) )
+					.evictIdleConnections( metadata.getIdleEvictionMillis(), TimeUnit.MILLISECONDS )
+					.evictExpiredConnections()
+					// TLS connections are bound to user token otherwise and can not be shared between requests
+					.disableConnectionState()
+					.build();
+			
+			return new HttpConnectionPool(connectionManager, httpClient);
+		}
+		
+		/**
+		 * Constructs RestTemplate object for secured service API consumption (querying via HTTPS).
+		 * It's just sample implementation that may corrected in full-scale application and represented as bean (@bean).
+		 */
+		private static HttpConnectionPool createHttpsConnectionPoolObject(RestTemplateMetadata metadata) {
+			try {
+				return createConnectionPool(metadata);
+			}catch(Throwable ex) {
+				ex.printStackTrace();
+				return null;
+			}
+		}
+		
+		/**
+		 * @param metadata - pool settings applied by the first call only, when singletone is created
+		 * @return singletone connection pool RestTemplate instance is working over, null if it failed to be created
+		 */
+		public static HttpConnectionPool getConnectionPool(RestTemplateMetadata metadata) {
+			HttpConnectionPool local = connectionPool;
+			if(local == null) {
+				synchronized (RestTemplateFactory.class) {
+					local = connectionPool;
+					// check other thread creates instance already
+					if(local == null) {
+						local = createHttpsConnectionPoolObject(metadata);
+						connectionPool = local;
+					}
+				}
+			}
+			return connectionPool;
+		}
+		
+		public static HttpConnectionPool getConnectionPool() {
+			return getConnectionPool( new RestTemplateMetadata.Builder().build() );
+		}
+		
+		public static RestTemplate getInstance(RestTemplateMetadata metadata) {
+			HttpConnectionPool local = getConnectionPool(metadata);
+			return (local != null) ? local.getRestTemplate() : null;
+		}
+		
+		public static RestTemplate getInstance() {
+			HttpConnectionPool local = getConnectionPool();
+			return (local != null) ? local.getRestTemplate() : null;
+		}
+	}
+	
+	/**
+	 * Non-blocking JDK HttpClient object factory for asynchronous HTTPS requests.
+	 * The same "Double Checked Locking & volatile" thread safe singletone pattern as RestTemplateFactory is used
+	 */
+	public static class HttpClientFactory {
+		
+		private static volatile HttpClient httpClient = null;
+		
+		private HttpClientFactory() { }
+		
+		private static HttpClient createHttpsClientObject() {
+			try {
+				return HttpClient.newBuilder()
+						.sslContext( RestTemplateFactory.createSslContext() )
+						.version(HttpClient.Version.HTTP_1_1)
+						.build();
+			}catch(Throwable ex) {
+				ex.printStackTrace();
+				return null;
+			}
+		}
+		
+		public static HttpClient getInstance() {
+			HttpClient local = httpClient;
+			if(local == null) {
+				synchronized (HttpClientFactory.class) {
+					local = httpClient;
+					// check other thread creates instance already
+					if(local == null) {
+						local = createHttpsClientObject();
+						httpClient = local;
+					}
+				}
+			}
+			return httpClient;
+		}
+	}
+	
+	public static class RestTemplateMetadata {
+		public static enum Protocol {HTTP, HTTPS}
+		
+		public static class Builder {
+			protected static final String STR_FIELD_EMPTY 	= "There are null, empty or wrong value fields: %s";
+			
+			protected Protocol		protocol 	= Protocol.HTTPS;
+			protected String		serverName	= "my.company.com";
+			protected int			serverPort	= 80;
+			protected String		urlSuffix	= "suffix";
+			protected URI			baseUri		= null;
+			
+			// connections pool settings
+			protected int			poolMaxTotal				= 200;
+			protected int			poolMaxPerRoute				= 50;
+			protected long			keepAliveMillis				= 30000L;
+			protected long			idleEvictionMillis			= 60000L;
+			protected long			connectionTtlMillis			= -1L;
+			protected int			validateAfterInactivityMillis	= 2000;
+			protected int			tlsSessionCacheSize			= 1000;
+			protected int			tlsSessionTimeoutSeconds	= 86400;
+			
+			protected void validate() { 	    	
+		    	var fields = new StringBuilder();
+		    	
+		    	if( protocol   == null ) fields.append("protocol, ");
+		    	if( serverPort < 0 || serverPort > 65535 ) fields.append("serverPort, ");
+		    	if( poolMaxTotal < 1 ) fields.append("poolMaxTotal, ");
+		    	if( poolMaxPerRoute < 1 || poolMaxPerRoute > poolMaxTotal ) fields.append("poolMaxPerRoute, ");
+		    	if( keepAliveMillis < 1 ) fields.append("keepAliveMillis, ");
+		    	if( idleEvictionMillis < 1 ) fields.append("idleEvictionMillis, ");
+		    	if( tlsSessionCacheSize < 0 ) fields.append("tlsSessionCacheSize, ");
+		    	if( tlsSessionTimeoutSeconds < 0 ) fields.append("tlsSessionTimeoutSeconds, ");
+		    	
+		    	try {
+		    		baseUri = new URI(protocol.name().toLowerCase(), null, serverName, 
+							serverPort, "/" + urlSuffix, /*"query"*/ null, null );
+		    		assert baseUri != null;
+				} catch (URISyntaxException ex) {
+					fields.append( String.format("URI wrong syntax: '%s', ", ex.getMessage()) );
+				}
+		    	
+				if(fields.length() > 0) throw new IllegalArgumentException( String.format(STR_FIELD_EMPTY, fields.toString()) );
+			}
+			
+			public Builder() { }
+			
+			public Builder protocol(Protocol protocol) {
+				this.protocol = protocol;
+				return this;
+			}
+			
+			public Builder serverName(String serverName) {
+				this.serverName = serverName;
+				return this;
+			}
+			
+			public Builder serverPort(int serverPort) {
+				this.serverPort = serverPort;
+				return this;
+			}
+			
+			public Builder urlSuffix(String urlSuffix) {
+				this.urlSuffix = urlSuffix;
+				return this;
+			}
+			
+			public Builder poolMaxTotal(int poolMaxTotal) {
+				this.poolMaxTotal = poolMaxTotal;
+				return this;
+			}
+			
+			public Builder poolMaxPerRoute(int poolMaxPerRoute) {
+				this.poolMaxPerRoute = poolMaxPerRoute;
+				return this;
+			}
+			
+			public Builder keepAliveMillis(long keepAliveMillis) {
+				this.keepAliveMillis = keepAliveMillis;
+				return this;
+			}
+			
+			public Builder idleEvictionMillis(long idleEvictionMillis) {
+				this.idleEvictionMillis = idleEvictionMillis;
+				return this;
+			}
+			
+			// zero or negative value means connection lifetime is not limited
+			public Builder connectionTtlMillis(long connectionTtlMillis) {
+				this.connectionTtlMillis = connectionTtlMillis;
+				return this;
+			}
+			
+			// zero or negative value turns stale connection check off
+			public Builder validateAfterInactivityMillis(int validateAfterInactivityMillis) {
+				this.validateAfterInactivityMillis = validateAfterInactivityMillis;
+				return this;
+			}
+			
+			// zero means no limit
+			public Builder tlsSessionCacheSize(int tlsSessionCacheSize) {
+				this.tlsSessionCacheSize = tlsSessionCacheSize;
+				return this;
+			}
+			
+			// zero means no limit
+			public Builder tlsSessionTimeoutSeconds(int tlsSessionTimeoutSeconds) {
+				this.tlsSessionTimeoutSeconds = tlsSessionTimeoutSeconds;
+				return this;
+			}
+			
+			public RestTemplateMetadata build() {
+				validate();
+				return new RestTemplateMetadata(this);
+			}
+		}
+		
+		protected Protocol		protocol;
+		protected String		serverName;
+		protected int			serverPort;
+		protected String		urlSuffix;
+		protected URI			baseUri;
+		
+		protected int			poolMaxTotal;
+		protected int			poolMaxPerRoute;
+		protected long			keepAliveMillis;
+		protected long			idleEvictionMillis;
+		protected long			connectionTtlMillis;
+		protected int			validateAfterInactivityMillis;
+		protected int			tlsSessionCacheSize;
+		protected int			tlsSessionTimeoutSeconds;
+		
+		private RestTemplateMetadata(Builder builder) {
+			assert builder != null;
+			
+			protocol 	= builder.protocol;
+			serverName	= builder.serverName;
+			serverPort 	= builder.serverPort;
+			urlSuffix 	= builder.urlSuffix;
+			baseUri		= builder.baseUri;
+			
+			poolMaxTotal					= builder.poolMaxTotal;
+			poolMaxPerRoute					= builder.poolMaxPerRoute;
+			keepAliveMillis					= builder.keepAliveMillis;
+			idleEvictionMillis				= builder.idleEvictionMillis;
+			connectionTtlMillis				= builder.connectionTtlMillis;
+			validateAfterInactivityMillis	= builder.validateAfterInactivityMillis;
+			tlsSessionCacheSize				= builder.tlsSessionCacheSize;
+			tlsSessionTimeoutSeconds		= builder.tlsSessionTimeoutSeconds;
+		}
+		
+		public Protocol getProtocol() {
+			return protocol;
+		}
+		
+		public String getServerName() {
+			return serverName;
+		}
+		
+		public int getServerPort() {
+			return serverPort;
+		}
+		
+		public String getUrlSuffix() {
+			return urlSuffix;
+		}
+		
+		public URI getBaseUri() {
+			return baseUri;
+		}
+		
+		public int getPoolMaxTotal() {
+			return poolMaxTotal;
+		}
+		
+		public int getPoolMaxPerRoute() {
+			return poolMaxPerRoute;
+		}
+		
+		public long getKeepAliveMillis() {
+			return keepAliveMillis;
+		}
+		
+		public long getIdleEvictionMillis() {
+			return idleEvictionMillis;
+		}
+		
+		public long getConnectionTtlMillis() {
+			return connectionTtlMillis;
+		}
+		
+		public int getValidateAfterInactivityMillis() {
+			return validateAfterInactivityMillis;
+		}
+		
+		public int getTlsSessionCacheSize() {
+			return tlsSessionCacheSize;
+		}
+		
+		public int getTlsSessionTimeoutSeconds() {
+			return tlsSessionTimeoutSeconds;
+		}
+		
+		@Override
+		public String toString() {
+			return baseUri.toString();
+		}
+	}
+	
+	public static class RestMetadataChestnyZnak extends RestTemplateMetadata {
+		public static class Builder extends RestTemplateMetadata.Builder {
+			
+			protected String baseQuery		= "pg=milk";
+			protected String documentSuffix	= "documents";
+			protected String createAction	= "create";
+			
+			protected void validate() {
+				super.validate();
+				
+				var fields = new StringBuilder();
+		    	
+		    	if( documentSuffix == null ) fields.append("documentSuffix, ");
+		    	if( createAction   == null ) fields.append("createAction, ");
+				
+				if(fields.length() > 0) throw new IllegalArgumentException( String.format(STR_FIELD_EMPTY, fields.toString()) );
+			}
+			
+			public Builder() { super(); }
+			
+			@Override
+			public Builder protocol(Protocol protocol) {
+				super.protocol(protocol);
+				return this;
+			}
+			
+			@Override
+			public Builder serverName(String serverName) {
+				super.serverName(serverName);
+				return this;
+			}
+			
+			@Override
+			public Builder serverPort(int serverPort) {
+				super.serverPort(serverPort);
+				return this;
+			}
+			
+			@Override
+			public Builder urlSuffix(String urlSuffix) {
+				super.urlSuffix(urlSuffix);
+				return this;
+			}
+			
+			@Override
+			public Builder poolMaxTotal(int poolMaxTotal) {
+				super.poolMaxTotal(poolMaxTotal);
+				return this;
+			}
+			
+			@Override
+			public Builder poolMaxPerRoute(int poolMaxPerRoute) {
+				super.poolMaxPerRoute(poolMaxPerRoute);
+				return this;
+			}
+			
+			@Override
+			public Builder keepAliveMillis(long keepAliveMillis) {
+				super.keepAliveMillis(keepAliveMillis);
+				return this;
+			}
+			
+			@Override
+			public Builder idleEvictionMillis(long idleEvictionMillis) {
+				super.idleEvictionMillis(idleEvictionMillis);
+				return this;
+			}
+			
+			@Override
+			public Builder connectionTtlMillis(long connectionTtlMillis) {
+				super.connectionTtlMillis(connectionTtlMillis);
+				return this;
+			}
+			
+			@Override
+			public Builder validateAfterInactivityMillis(int validateAfterInactivityMillis) {
+				super.validateAfterInactivityMillis(validateAfterInactivityMillis);
+				return this;
+			}
+			
+			@Override
+			public Builder tlsSessionCacheSize(int tlsSessionCacheSize) {
+				super.tlsSessionCacheSize(tlsSessionCacheSize);
+				return this;
+			}
+			
+			@Override
+			public Builder tlsSessionTimeoutSeconds(int tlsSessionTimeoutSeconds) {
+				super.tlsSessionTimeoutSeconds(tlsSessionTimeoutSeconds);
+				return this;
+			}
+			
+			public Builder baseQuery(String baseQuery) {
+				this.baseQuery = baseQuery;
+				return this;
+			}
+			
+			public Builder documentSuffix(String documentSuffix) {
+				this.documentSuffix = documentSuffix;
+				return this;
+			}
+			
+			public Builder createAction(String createAction) {
+				this.createAction = createAction;
+				return this;
+			}
+			
+			public RestMetadataChestnyZnak build() {
+				validate();
+				return new RestMetadataChestnyZnak(this);
+			}
+		}
+		
+		protected String baseQuery;
+		protected String documentSuffix;
+		protected String createAction;
+		
+		private RestMetadataChestnyZnak(Builder builder) {
+			super(builder);
+			
+			baseQuery		= builder.baseQuery;
+			documentSuffix 	= builder.documentSuffix;
+			createAction 	= builder.createAction;
+		}
+		
+		public String getBaseQuery() {
+			return baseQuery;
+		}
+		
+		public String getDocumentSuffix() {
 			return documentSuffix;
 		}
 		
-		public String getCreateAction() {
-			return createAction;
+		public String getCreateAction() {
+			return createAction;
+		}
+		
+		public URI getDocumentCreationUri() throws URISyntaxException {
+			return new URI(baseUri.getScheme(), null, baseUri.getHost(), 
+					baseUri.getPort(), baseUri.getPath() + "/" + documentSuffix + "/" + createAction, 
+					baseQuery, null);
+		}
+	}
+	
+	/**
+	 * Remote API auth token issued for certificate
+	 */
+	public static class AuthToken {
+		protected static final String STR_TOKEN = "AuthToken object: {remainingMillis='%d'}";
+		
+		protected final String	value;
+		protected final long	expiresAtNanos;
+		
+		/**
+		 * @param value - token
+		 * @param ttl - token time to live
+		 * @param unit - time to live unit
+		 */
+		public AuthToken(String value, long ttl, TimeUnit unit) {
+			String strValue = "value", strUnit = "unit";
+			
+			this.value			= Objects.requireNonNull(value, strValue);
+			this.expiresAtNanos	= System.nanoTime() + Objects.requireNonNull(unit, strUnit).toNanos(ttl);
+		}
+		
+		public String getValue() {
+			return value;
+		}
+		
+		public long getRemainingNanos() {
+			return expiresAtNanos - System.nanoTime();
+		}
+		
+		public boolean isExpired() {
+			return getRemainingNanos() <= 0;
+		}
+		
+		// token value is secret - it is never printed
+		@Override
+		public String toString() {
+			return String.format( STR_TOKEN, TimeUnit.NANOSECONDS.toMillis(getRemainingNanos()) );
+		}
+	}
+	
+	/**
+	 * Obtains new auth token for certificate - slow operation (i.e. remote API challenge signing), so its result is cached
+	 */
+	@FunctionalInterface
+	public static interface TokenSource {
+		AuthToken fetch(String certificate) throws Exception;
+	}
+	
+	/**
+	 * Token source of remote API certificate flow: gets random challenge (uuid, data) from 'key' endpoint,
+	 * signs data by certificate and exchanges signature for token valid for hours
+	 */
+	public static class HttpTokenSource implements TokenSource {
+		protected static final String STR_KEY_PATH		= "key";
+		protected static final String STR_UUID			= "uuid";
+		protected static final String STR_DATA			= "data";
+		protected static final String STR_TOKEN			= "token";
+		protected static final String STR_NO_TOKEN		= "Auth endpoint returned no token: %s";
+		// remote API tokens are valid for 10 hours
+		protected static final long	  LONG_TOKEN_TTL_MILLIS = TimeUnit.HOURS.toMillis(10);
+		
+		protected final RestTemplate						restTemplate;
+		protected final URI									authUri;
+		protected final URI									keyUri;
+		protected final BiFunction<String, String, String>	signer;
+		protected final long								tokenTtlMillis;
+		
+		/**
+		 * @param restTemplate - HTTP client
+		 * @param authUri - token endpoint URI, challenge endpoint is its 'key' sub-path
+		 * @param signer - signs challenge data (second argument) by certificate (first one), returns signature in Base64
+		 * @param tokenTtlMillis - issued token time to live
+		 */
+		public HttpTokenSource(RestTemplate restTemplate, URI authUri, BiFunction<String, String, String> signer, long tokenTtlMillis) {
+			String strRestTemplate = "restTemplate", strAuthUri = "authUri", strSigner = "signer", strTokenTtl = "tokenTtlMillis";
+			
+			this.restTemplate	= Objects.requireNonNull(restTemplate, strRestTemplate);
+			this.authUri		= Objects.requireNonNull(authUri, strAuthUri);
+			this.keyUri			= authUri.resolve(STR_KEY_PATH);
+			this.signer			= Objects.requireNonNull(signer, strSigner);
+			if(tokenTtlMillis < 1) throw new IllegalArgumentException(strTokenTtl);
+			this.tokenTtlMillis	= tokenTtlMillis;
+		}
+		
+		public HttpTokenSource(RestTemplate restTemplate, URI authUri, BiFunction<String, String, String> signer) {
+			this(restTemplate, authUri, signer, LONG_TOKEN_TTL_MILLIS);
+		}
+		
+		@Override
+		public AuthToken fetch(String certificate) {
+			JsonNode challenge = restTemplate.getForObject(keyUri, JsonNode.class);
+			
+			Map<String, String> request = new HashMap<>();
+			request.put( STR_UUID, challenge.path(STR_UUID).asText() );
+			request.put( STR_DATA, signer.apply(certificate, challenge.path(STR_DATA).asText()) );
+			
+			JsonNode response = restTemplate.postForObject(authUri, request, JsonNode.class);
+			if(response == null || !response.hasNonNull(STR_TOKEN)) throw new IllegalStateException( String.format(STR_NO_TOKEN, response) );
+			
+			return new AuthToken( response.get(STR_TOKEN).asText(), tokenTtlMillis, TimeUnit.MILLISECONDS );
+		}
+	}
+	
+	/**
+	 * Auth tokens cache per certificate. Token is refreshed by background threads ahead of its expiry,
+	 * so senders read cached token without waiting (volatile read) - caller waits only for the very first token 
+	 * of certificate or when token expired as refreshes failed. Concurrent refreshes of certificate are coalesced
+	 * into one token source call. Failed refresh keeps current token and is repeated with exponential backoff,
+	 * background refreshing of certificate gives up after several failures in a row (next caller starts it again).
+	 * Certificate not asked for during idle time is evicted instead of being refreshed.
+	 */
+	public static class AuthTokenProvider implements AutoCloseable {
+		protected static final String STR_THREAD_REFRESH	= "AuthTokenProvider-refresh";
+		protected static final String STR_NO_TOKEN			= "Auth token of certificate '%s' was not obtained";
+		protected static final int	  INT_REFRESH_THREADS	= 2;
+		protected static final long	  LONG_RETRY_NANOS		= TimeUnit.SECONDS.toNanos(1);
+		protected static final long	  LONG_MAX_RETRY_NANOS	= TimeUnit.MINUTES.toNanos(1);
+		protected static final int	  INT_MAX_FAILURES		= 10;
+		protected static final long	  LONG_IDLE_MINUTES		= 30L;
+		
+		protected static class Entry {
+			protected final String										certificate;
+			protected volatile AuthToken								token		= null;
+			// refresh in progress, concurrent callers share it
+			protected final AtomicReference<CompletableFuture<AuthToken>> refreshing = new AtomicReference<>();
+			protected ScheduledFuture<?>								scheduled	= null;
+			// failed refreshes in a row, accessed by fetching thread only
+			protected int												failures	= 0;
+			protected volatile long										lastUsedNanos;
+			
+			protected Entry(String certificate) {
+				this.certificate	= certificate;
+				this.lastUsedNanos	= System.nanoTime();
+			}
+		}
+		
+		protected final TokenSource						source;
+		protected final long							refreshAheadNanos;
+		protected final long							idleNanos;
+		protected final ConcurrentMap<String, Entry>	entries		= new ConcurrentHashMap<>();
+		protected final ScheduledExecutorService		scheduler;
+		protected final LongAdder						fetched		= new LongAdder();
+		protected final LongAdder						failed		= new LongAdder();
+		
+		/**
+		 * @param source - token source
+		 * @param refreshAhead - how long before expiry token is refreshed
+		 * @param idle - how long certificate is kept refreshed since it was asked for last time
+		 * @param unit - refresh ahead and idle time unit
+		 */
+		public AuthTokenProvider(TokenSource source, long refreshAhead, long idle, TimeUnit unit) {
+			String strSource = "source", strRefreshAhead = "refreshAhead", strIdle = "idle", strUnit = "unit";
+			
+			this.source = Objects.requireNonNull(source, strSource);
+			if(refreshAhead < 0) throw new IllegalArgumentException(strRefreshAhead);
+			if(idle < 0) throw new IllegalArgumentException(strIdle);
+			this.refreshAheadNanos	= Objects.requireNonNull(unit, strUnit).toNanos(refreshAhead);
+			this.idleNanos			= unit.toNanos(idle);
+			
+			var counter = new AtomicInteger();
+			scheduler = Executors.newScheduledThreadPool(INT_REFRESH_THREADS, runnable -> {
+				var thread = new Thread( runnable, String.format(RequestProcessor.STR_THREAD_WORKER, STR_THREAD_REFRESH, counter.incrementAndGet()) );
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		
+		public AuthTokenProvider(TokenSource source, long refreshAhead, TimeUnit unit) {
+			this( source, refreshAhead, Objects.requireNonNull(unit, "unit").convert(LONG_IDLE_MINUTES, TimeUnit.MINUTES), unit );
+		}
+		
+		/**
+		 * @param certificate - certificate
+		 * @return valid token of certificate
+		 * @throws IllegalStateException - there is no valid token and token source failed to issue new one
+		 */
+		public String getToken(String certificate) {
+			String strCertificate = "certificate";
+			Objects.requireNonNull(certificate, strCertificate);
+			
+			Entry entry = entries.computeIfAbsent(certificate, Entry::new);
+			entry.lastUsedNanos = System.nanoTime();
+			AuthToken token = entry.token;
+			if(token != null && !token.isExpired()) return token.getValue();
+			
+			try {
+				return refresh(entry).join().getValue();
+			}catch(CompletionException ex) {
+				throw new IllegalStateException( String.format(STR_NO_TOKEN, certificate), ex.getCause() );
+			}
+		}
+		
+		/**
+		 * Sets 'Authorization: Bearer' header by token of certificate
+		 * @param headers - request headers
+		 * @param certificate - certificate
+		 */
+		public void authorize(HttpHeaders headers, String certificate) {
+			headers.setBearerAuth( getToken(certificate) );
+		}
+		
+		/**
+		 * Obtains token of certificate in advance (i.e. for all known participants at start)
+		 * @return future of token
+		 */
+		public CompletableFuture<AuthToken> prefetch(String certificate) {
+			String strCertificate = "certificate";
+			Objects.requireNonNull(certificate, strCertificate);
+			
+			Entry entry = entries.computeIfAbsent(certificate, Entry::new);
+			entry.lastUsedNanos = System.nanoTime();
+			return refresh(entry);
+		}
+		
+		/**
+		 * Starts token refresh unless it is in progress already
+		 * @return future of refreshed token
+		 */
+		protected CompletableFuture<AuthToken> refresh(Entry entry) {
+			while(true) {
+				CompletableFuture<AuthToken> current = entry.refreshing.get();
+				if(current != null) return current;
+				
+				var future = new CompletableFuture<AuthToken>();
+				if( !entry.refreshing.compareAndSet(null, future) ) continue;
+				
+				try {
+					scheduler.execute( () -> fetch(entry, future) );
+				}catch(RejectedExecutionException ex) {
+					// provider is closed
+					entry.refreshing.set(null);
+					future.completeExceptionally(ex);
+				}
+				return future;
+			}
+		}
+		
+		protected void fetch(Entry entry, CompletableFuture<AuthToken> future) {
+			long delayNanos;
+			
+			try {
+				AuthToken token = source.fetch(entry.certificate);
+				if(token == null) throw new IllegalStateException( String.format(STR_NO_TOKEN, entry.certificate) );
+				
+				entry.token = token;
+				entry.failures = 0;
+				fetched.increment();
+				delayNanos = Math.max( 0L, token.getRemainingNanos() - refreshAheadNanos );
+				
+				// the next refresh might be started as soon as this one is completed
+				entry.refreshing.set(null);
+				future.complete(token);
+			}catch(Throwable ex) {
+				failed.increment();
+				// 1s, 2s, 4s ... up to LONG_MAX_RETRY_NANOS
+				int failures = ++entry.failures;
+				delayNanos = (failures > 16) ? LONG_MAX_RETRY_NANOS : Math.min(LONG_RETRY_NANOS << (failures - 1), LONG_MAX_RETRY_NANOS);
+				// give up background refreshing - token source is down, the next caller of certificate retries it
+				if(failures >= INT_MAX_FAILURES) delayNanos = -1L;
+				
+				entry.refreshing.set(null);
+				future.completeExceptionally(ex);
+			}
+			
+			// single scheduled refresh per certificate - earlier one is replaced
+			synchronized(entry) {
+				if(entry.scheduled != null) entry.scheduled.cancel(false);
+				entry.scheduled = null;
+				if(delayNanos < 0) return;
+				
+				try {
+					entry.scheduled = scheduler.schedule( () -> refreshIfUsed(entry), delayNanos, TimeUnit.NANOSECONDS );
+				}catch(RejectedExecutionException ex) {
+					entry.scheduled = null;
+				}
+			}
+		}
+		
+		/**
+		 * Scheduled refresh - certificate is evicted instead if nobody asked for it during idle time
+		 */
+		protected void refreshIfUsed(Entry entry) {
+			if( entries.get(entry.certificate) == entry && System.nanoTime() - entry.lastUsedNanos <= idleNanos ) {
+				refresh(entry);
+				return;
+			}
+			
+			entries.remove(entry.certificate, entry);
+			synchronized(entry) {
+				entry.scheduled = null;
+			}
+		}
+		
+		/**
+		 * @return tokens quantity issued by token source
+		 */
+		public long getFetched() {
+			return fetched.sum();
+		}
+		
+		/**
+		 * @return failed token source calls quantity
+		 */
+		public long getFailed() {
+			return failed.sum();
+		}
+		
+		/**
+		 * @return quantity of certificates tokens are cached for
+		 */
+		public int getCached() {
+			return entries.size();
+		}
+		
+		/**
+		 * Stops background refreshing, cached tokens are still served until they expire
+		 */
+		@Override
+		public void close() {
+			scheduler.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Requests rate limiter abstraction - grants permits before message (document) sending onto remote API
+	 */
+	public static interface RateLimiter {
+		/**
+		 * Blocks caller thread until requested permits are granted
+		 * @param permits - permits quantity
+		 * @return time in nanoseconds caller thread was waiting for permits
+		 */
+		long acquire(int permits) throws InterruptedException;
+
+		/**
+		 * Grants requested permits only in case they are available immediately
+		 * @param permits - permits quantity
+		 * @return true if permits were granted, false otherwise
+		 */
+		boolean tryAcquire(int permits);
+
+		default long acquire() throws InterruptedException {
+			return acquire(1);
+		}
+
+		default boolean tryAcquire() {
+			return tryAcquire(1);
+		}
+
+		/**
+		 * Feedback about request sent with granted permit, adaptive limiters correct rate by it
+		 * @param response - remote API response, null if request was failed by exception
+		 * @param error - request exception, null if remote API responded
+		 * @param latencyNanos - request duration
+		 */
+		default void onResult(ResponseEntity<?> response, Throwable error, long latencyNanos) { }
+
+		/**
+		 * @return current rate in permits per second, NaN if it is unknown
+		 */
+		default double getRatePerSecond() {
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Token bucket rate limiter. Bucket is refilled continuously by wall-clock time (System.nanoTime) with rate
+	 * 'requestLimit' per 'timeUnit' and holds up to 'burst' permits.
+	 * Tokens are counted in integer "nano-permits" (one permit costs timeUnit nanoseconds, each elapsed nanosecond
+	 * adds requestLimit of them) so there is no rounding drift and contracted quota is hit exactly under load.
+	 * Permits are reserved under lock and caller sleeps outside of it, so waiting threads are served in arrival order.
+	 */
+	public static class TokenBucketRateLimiter implements RateLimiter {
+		protected long	requestLimit;
+		protected long	periodNanos;
+		protected long	capacity;
+		protected long	tokens;
+		protected long	lastRefillNanos;
+
+		public TokenBucketRateLimiter(long requestLimit, TimeUnit timeUnit, int burst) {
+			String strTimeUnit = "timeUnit", strRequestLimit = "requestLimit", strBurst = "burst";
+
+			Objects.requireNonNull(timeUnit, strTimeUnit);
+			if(requestLimit < 1) throw new IllegalArgumentException(strRequestLimit);
+			if(burst < 1) throw new IllegalArgumentException(strBurst);
+
+			this.requestLimit	= requestLimit;
+			this.periodNanos	= timeUnit.toNanos(1);
+			try {
+				this.capacity	= Math.multiplyExact(periodNanos, (long)burst);
+			}catch(ArithmeticException ex) {
+				throw new IllegalArgumentException(strBurst);
+			}
+
+			// bucket is full at start - up to 'burst' requests might be sent at once
+			this.tokens				= capacity;
+			this.lastRefillNanos	= System.nanoTime();
+		}
+
+		protected void refill(long now) {
+			long elapsed = now - lastRefillNanos;
+			if(elapsed <= 0) return;
+
+			lastRefillNanos = now;
+			// elapsed time needed to fill bucket completely, bounds multiplication below against overflow
+			long fillNanos = (capacity - tokens) / requestLimit + 1;
+			tokens = (elapsed >= fillNanos) ? capacity : Math.min(capacity, tokens + elapsed * requestLimit);
+		}
+
+		/**
+		 * Reserves permits (bucket may go into debt) and returns nanoseconds to wait until the reservation is covered
+		 */
+		protected synchronized long reserve(int permits) {
+			refill( System.nanoTime() );
+
+			tokens -= periodNanos * permits;
+			if(tokens >= 0) return 0L;
+
+			// round up - never wake up before the debt is paid
+			return (-tokens + requestLimit - 1) / requestLimit;
+		}
+
+		@Override
+		public long acquire(int permits) throws InterruptedException {
+			String strPermits = "permits";
+			if(permits < 1) throw new IllegalArgumentException(strPermits);
+
+			long waitNanos = reserve(permits);
+			if(waitNanos > 0) TimeUnit.NANOSECONDS.sleep(waitNanos);
+
+			return waitNanos;
+		}
+
+		@Override
+		public synchronized boolean tryAcquire(int permits) {
+			String strPermits = "permits";
+			if(permits < 1) throw new IllegalArgumentException(strPermits);
+
+			refill( System.nanoTime() );
+
+			long cost = periodNanos * permits;
+			if(tokens < cost) return false;
+
+			tokens -= cost;
+			return true;
+		}
+
+		/**
+		 * Changes rate on the fly - tokens gathered so far are kept, the next ones are added with new rate
+		 * @param requestLimit - requests quantity per time unit
+		 */
+		public synchronized void setRequestLimit(long requestLimit) {
+			String strRequestLimit = "requestLimit";
+			if(requestLimit < 1) throw new IllegalArgumentException(strRequestLimit);
+
+			refill( System.nanoTime() );
+			this.requestLimit = requestLimit;
+		}
+
+		public synchronized long getRequestLimit() {
+			return requestLimit;
+		}
+
+		@Override
+		public synchronized double getRatePerSecond() {
+			return (double)requestLimit * TimeUnit.SECONDS.toNanos(1) / periodNanos;
+		}
+	}
+
+	/**
+	 * Adaptive rate limiter converging on rate remote API actually accepts (AIMD - additive increase, multiplicative decrease):
+	 * rate grows by 'increaseStep' after each 'increaseWindow' successful responses up to hard ceiling,
+	 * and is cut by 'decreaseFactor' (down to floor) on throttling responses (429, 503) or responses slower than
+	 * latency threshold. Responses to requests sent before the last cut are not counted, so one congestion
+	 * episode cuts rate once. 'Retry-After' header (seconds or HTTP-date) pauses all permits until the time given.
+	 * Permits are granted by token bucket with current rate.
+	 */
+	public static class AdaptiveRateLimiter implements RateLimiter {
+		protected static final long LONG_MAX_RETRY_AFTER_NANOS = TimeUnit.HOURS.toNanos(1);
+		
+		// GoF 'Builder' pattern implemented for convenient object instantiation - way not to specify all fields via constructor
+		public static class Builder {
+			protected long		initialLimit			= 1L;
+			protected long		minLimit				= 1L;
+			protected long		maxLimit				= 1L;
+			protected TimeUnit	timeUnit				= TimeUnit.SECONDS;
+			protected int		burst					= 1;
+			protected long		increaseStep			= 1L;
+			protected int		increaseWindow			= 10;
+			protected double	decreaseFactor			= 0.5;
+			protected long		latencyThresholdMillis	= 0L;
+			
+			public Builder() { }
+			
+			/**
+			 * @param initialLimit - starting requests quantity per time unit
+			 * @param minLimit - rate floor
+			 * @param maxLimit - rate hard ceiling (i.e. contracted quota), never exceeded
+			 * @param timeUnit - rate time unit
+			 */
+			public Builder limits(long initialLimit, long minLimit, long maxLimit, TimeUnit timeUnit) {
+				this.initialLimit	= initialLimit;
+				this.minLimit		= minLimit;
+				this.maxLimit		= maxLimit;
+				this.timeUnit		= timeUnit;
+				return this;
+			}
+			
+			public Builder burst(int burst) {
+				this.burst = burst;
+				return this;
+			}
+			
+			public Builder increaseStep(long increaseStep) {
+				this.increaseStep = increaseStep;
+				return this;
+			}
+			
+			/**
+			 * @param increaseWindow - successful responses quantity rate is increased after
+			 */
+			public Builder increaseWindow(int increaseWindow) {
+				this.increaseWindow = increaseWindow;
+				return this;
+			}
+			
+			public Builder decreaseFactor(double decreaseFactor) {
+				this.decreaseFactor = decreaseFactor;
+				return this;
+			}
+			
+			/**
+			 * @param latencyThresholdMillis - response latency treated as congestion sign, 0 - latency is not watched
+			 */
+			public Builder latencyThresholdMillis(long latencyThresholdMillis) {
+				this.latencyThresholdMillis = latencyThresholdMillis;
+				return this;
+			}
+			
+			public AdaptiveRateLimiter build() {
+				var validation = new Validation()
+						.check("timeUnit", timeUnit != null)
+						.check("minLimit", minLimit >= 1)
+						.check("maxLimit", maxLimit >= minLimit)
+						.check("initialLimit", initialLimit >= minLimit && initialLimit <= maxLimit)
+						.check("burst", burst >= 1)
+						.check("increaseStep", increaseStep >= 1)
+						.check("increaseWindow", increaseWindow >= 1)
+						.check("decreaseFactor", decreaseFactor > 0.0 && decreaseFactor < 1.0)
+						.check("latencyThresholdMillis", latencyThresholdMillis >= 0);
+				validation.throwIfInvalid();
+				
+				return new AdaptiveRateLimiter(this);
+			}
+		}
+		
+		protected final TokenBucketRateLimiter	bucket;
+		protected final long					minLimit;
+		protected final long					maxLimit;
+		protected final long					increaseStep;
+		protected final int						increaseWindow;
+		protected final double					decreaseFactor;
+		protected final long					latencyThresholdNanos;
+		protected long							limit;
+		protected int							successes			= 0;
+		protected long							lastDecreaseNanos	= System.nanoTime();
+		protected volatile long					pausedUntilNanos	= System.nanoTime();
+		
+		protected AdaptiveRateLimiter(Builder builder) {
+			assert builder != null;
+			
+			bucket					= new TokenBucketRateLimiter(builder.initialLimit, builder.timeUnit, builder.burst);
+			limit					= builder.initialLimit;
+			minLimit				= builder.minLimit;
+			maxLimit				= builder.maxLimit;
+			increaseStep			= builder.increaseStep;
+			increaseWindow			= builder.increaseWindow;
+			decreaseFactor			= builder.decreaseFactor;
+			latencyThresholdNanos	= TimeUnit.MILLISECONDS.toNanos(builder.latencyThresholdMillis);
+		}
+		
+		/**
+		 * Waits until 'Retry-After' pause is over
+		 * @return time in nanoseconds caller thread was waiting
+		 */
+		protected long awaitPause() throws InterruptedException {
+			long waited = 0L;
+			
+			while(true) {
+				long waitNanos = pausedUntilNanos - System.nanoTime();
+				if(waitNanos <= 0) return waited;
+				
+				TimeUnit.NANOSECONDS.sleep(waitNanos);
+				waited += waitNanos;
+			}
+		}
+		
+		@Override
+		public long acquire(int permits) throws InterruptedException {
+			long waited = awaitPause();
+			return waited + bucket.acquire(permits);
+		}
+		
+		@Override
+		public boolean tryAcquire(int permits) {
+			if(pausedUntilNanos - System.nanoTime() > 0) return false;
+			return bucket.tryAcquire(permits);
+		}
+		
+		@Override
+		public void onResult(ResponseEntity<?> response, Throwable error, long latencyNanos) {
+			int status = 0;
+			HttpHeaders headers = null;
+			
+			if(response != null) {
+				status	= response.getStatusCodeValue();
+				headers	= response.getHeaders();
+			} else if(error instanceof HttpStatusCodeException) {
+				status	= ((HttpStatusCodeException)error).getRawStatusCode();
+				headers	= ((HttpStatusCodeException)error).getResponseHeaders();
+			}
+			
+			boolean throttled = status == HttpStatus.TOO_MANY_REQUESTS.value() || status == HttpStatus.SERVICE_UNAVAILABLE.value();
+			if(throttled && headers != null) pause( retryAfterNanos(headers) );
+			
+			long now = System.nanoTime();
+			boolean slow = latencyThresholdNanos > 0 && latencyNanos > latencyThresholdNanos;
+			
+			synchronized(this) {
+				if(throttled || slow) {
+					// request was sent before the last cut - its congestion sign is counted already
+					if(now - latencyNanos - lastDecreaseNanos < 0) return;
+					
+					lastDecreaseNanos = now;
+					successes = 0;
+					setLimit( Math.max(minLimit, (long)(limit * decreaseFactor)) );
+				}
+				else if(status >= 200 && status < 300 && ++successes >= increaseWindow) {
+					successes = 0;
+					setLimit( Math.min(maxLimit, limit + increaseStep) );
+				}
+			}
+		}
+		
+		protected void setLimit(long limit) {
+			if(limit == this.limit) return;
+			
+			this.limit = limit;
+			bucket.setRequestLimit(limit);
+		}
+		
+		/**
+		 * @return 'Retry-After' header delay in nanoseconds, 0 if there is no header or it is malformed
+		 */
+		protected static long retryAfterNanos(HttpHeaders headers) {
+			String value = headers.getFirst(HttpHeaders.RETRY_AFTER);
+			if(value == null || value.isBlank()) return 0L;
+			
+			value = value.trim();
+			try {
+				return TimeUnit.SECONDS.toNanos( Long.parseLong(value) );
+			}catch(NumberFormatException ex) {
+				try {
+					var date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+					return TimeUnit.MILLISECONDS.toNanos( date.toInstant().toEpochMilli() - System.currentTimeMillis() );
+				}catch(DateTimeParseException exx) {
+					return 0L;
+				}
+			}
+		}
+		
+		/**
+		 * Stops granting permits for given time
+		 * @param nanos - pause duration
+		 */
+		public synchronized void pause(long nanos) {
+			if(nanos <= 0) return;
+			
+			long until = System.nanoTime() + Math.min(nanos, LONG_MAX_RETRY_AFTER_NANOS);
+			if(until - pausedUntilNanos > 0) pausedUntilNanos = until;
+		}
+		
+		/**
+		 * @return current requests quantity per time unit
+		 */
+		public synchronized long getLimit() {
+			return limit;
+		}
+		
+		@Override
+		public double getRatePerSecond() {
+			return bucket.getRatePerSecond();
+		}
+	}
+
+	/**
+	 * Threads kind requests are executed by. Virtual threads (JDK 21+) are looked up reflectively,
+	 * so the class is still compiled and run by older JDK in PLATFORM mode.
+	 */
+	public static enum ExecutionMode {
+		PLATFORM, VIRTUAL;
+		
+		protected static final String STR_THREAD_NAME			= "%s-%d";
+		protected static final String STR_NO_VIRTUAL_THREADS	= "Virtual threads are not supported by current JVM, JDK 21+ required";
+		
+		/**
+		 * Creates factory of threads named as 'threadName-N'
+		 * @param threadName - threads name prefix
+		 */
+		public ThreadFactory threadFactory(String threadName) {
+			String strThreadName = "threadName";
+			Objects.requireNonNull(threadName, strThreadName);
+			
+			if(this == VIRTUAL) {
+				try {
+					// Thread.ofVirtual().name(threadName + "-", 1).factory()
+					var builderClass = Class.forName("java.lang.Thread$Builder");
+					Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+					builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadName + "-", 1L);
+					return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+				}catch(ReflectiveOperationException ex) {
+					throw new UnsupportedOperationException(STR_NO_VIRTUAL_THREADS, ex);
+				}
+			}
+			
+			var counter = new AtomicInteger();
+			return task -> new Thread(task, String.format(STR_THREAD_NAME, threadName, counter.incrementAndGet()));
+		}
+		
+		/**
+		 * Creates executor starting new thread per each task (virtual) or reusing idle ones (platform)
+		 * @param threadName - threads name prefix
+		 */
+		public ExecutorService newExecutor(String threadName) {
+			var threadFactory = threadFactory(threadName);
+			
+			if(this == VIRTUAL) {
+				try {
+					// Executors.newThreadPerTaskExecutor(threadFactory)
+					return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+							.invoke(null, threadFactory);
+				}catch(ReflectiveOperationException ex) {
+					throw new UnsupportedOperationException(STR_NO_VIRTUAL_THREADS, ex);
+				}
+			}
+			
+			return Executors.newCachedThreadPool(threadFactory);
+		}
+	}
+	
+	/**
+	 * Asynchronous (non-blocking) sender contract - returns immediately, remote API response completes the future
+	 *
+	 * @param <T> - message (document) type
+	 */
+	@FunctionalInterface
+	public static interface AsyncRestSender<T> extends Function<T, CompletableFuture<ResponseEntity<?>>> { }
+	
+	/**
+	 * Typed final result of document processing: remote API response status, latency from enqueueing,
+	 * remote document id (document creation answer) or error the document was given up by
+	 */
+	public static class RequestResult {
+		protected static final String STR_RESULT	= "RequestResult object: {id='%s', status='%d', latencyMillis='%.3f', " +
+				"remoteDocId='%s', attempts='%d', error='%s'}";
+		protected static final String STR_VALUE	= "value";
+		
+		protected final Long				id;
+		protected final ResponseEntity<?>	response;
+		protected final long				latencyNanos;
+		protected final int					attempts;
+		protected final Throwable			error;
+		
+		/**
+		 * @param message - message (document) was processed
+		 * @param response - remote API response, null if message was failed by exception (or rejected)
+		 * @param error - exception, null if remote API responded
+		 */
+		public RequestResult(Header message, ResponseEntity<?> response, Throwable error) {
+			String strMessage = "message";
+			Objects.requireNonNull(message, strMessage);
+			
+			this.id				= message.getId();
+			this.response		= response;
+			this.error			= error;
+			this.attempts		= message.getAttempt();
+			this.latencyNanos	= (message.getEnqueuedNanos() != 0L) ? System.nanoTime() - message.getEnqueuedNanos() : 0L;
+		}
+		
+		public Long getId() {
+			return id;
+		}
+		
+		/**
+		 * @return remote API response, null if there was no one
+		 */
+		public ResponseEntity<?> getResponse() {
+			return response;
+		}
+		
+		/**
+		 * @return remote API response status code, 0 if there was no response
+		 */
+		public int getStatus() {
+			return (response != null) ? response.getStatusCodeValue() : 0;
+		}
+		
+		/**
+		 * @return time from enqueueing to result in nanoseconds, 0 if message was not enqueued
+		 */
+		public long getLatencyNanos() {
+			return latencyNanos;
+		}
+		
+		/**
+		 * @return sending attempts quantity
+		 */
+		public int getAttempts() {
+			return attempts;
+		}
+		
+		public Throwable getError() {
+			return error;
+		}
+		
+		/**
+		 * @return true if document was created by remote API
+		 */
+		public boolean isCreated() {
+			return error == null && getStatus() == HttpStatus.CREATED.value();
+		}
+		
+		/**
+		 * @return document id assigned by remote API, null if it is unknown
+		 */
+		public String getRemoteDocId() {
+			if(response == null || !response.hasBody()) return null;
+			
+			Object body = response.getBody();
+			if(body instanceof Document) return ((Document)body).getDocId();
+			if(body instanceof Map) {
+				Object value = ((Map<?, ?>)body).get(STR_VALUE);
+				return (value != null) ? value.toString() : null;
+			}
+			if(body instanceof String) {
+				// creation answer is {"value": "<document id>"} JSON or plain id
+				String text = ((String)body).trim();
+				if( !text.startsWith("{") ) return text.isEmpty() ? null : text;
+				
+				try {
+					JsonNode value = JsonCodec.getMapper().readTree(text).get(STR_VALUE);
+					return (value != null && !value.isNull()) ? value.asText() : null;
+				}catch(JsonProcessingException ex) {
+					return null;
+				}
+			}
+			return null;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format(STR_RESULT, id, getStatus(), latencyNanos / 1e6, getRemoteDocId(), attempts, error);
+		}
+	}
+	
+	/**
+	 * Lock-free latency histogram with HDR-like log-linear buckets: every power of two range is split into
+	 * 32 linear sub-buckets, so any recorded value is reported with relative error below ~3%.
+	 * Recording is one array cell increment, no allocations.
+	 */
+	public static class LatencyHistogram {
+		protected static final int INT_SUB_BITS		= 5;
+		protected static final int INT_SUB_COUNT	= 1 << INT_SUB_BITS;
+		protected static final int INT_BUCKETS		= (64 - INT_SUB_BITS) * INT_SUB_COUNT;
+		protected static final String STR_SNAPSHOT	= "{count=%d, mean=%.3f ms, p50=%.3f ms, p90=%.3f ms, p99=%.3f ms, max=%.3f ms}";
+		
+		/**
+		 * Immutable histogram state at some moment
+		 */
+		public static class Snapshot {
+			protected long[]	counts;
+			protected long		count;
+			protected long		sum;
+			protected long		max;
+			
+			protected Snapshot(long[] counts, long sum, long max) {
+				this.counts	= counts;
+				this.sum	= sum;
+				this.max	= max;
+				for(long c : counts) count += c;
+			}
+			
+			public long getCount() {
+				return count;
+			}
+			
+			public long getMaxNanos() {
+				return max;
+			}
+			
+			public double getMeanNanos() {
+				return (count > 0) ? (double)sum / count : 0.0;
+			}
+			
+			/**
+			 * @param percentile - percentile in range [0, 1]
+			 * @return value in nanoseconds (bucket upper bound, but not greater than maximum recorded)
+			 */
+			public long getPercentileNanos(double percentile) {
+				if(count == 0) return 0L;
+				
+				long rank = Math.max( 1L, (long)Math.ceil(percentile * count) ), seen = 0L;
+				for(int i=0; i<counts.length; i++) {
+					seen += counts[i];
+					if(seen >= rank) return Math.min( max, valueOf(i + 1) - 1 );
+				}
+				return max;
+			}
+			
+			@Override
+			public String toString() {
+				return String.format(STR_SNAPSHOT, count, getMeanNanos() / 1e6, getPercentileNanos(0.5) / 1e6, 
+						getPercentileNanos(0.9) / 1e6, getPercentileNanos(0.99) / 1e6, max / 1e6);
+			}
+		}
+		
+		protected AtomicLongArray	counts	= new AtomicLongArray(INT_BUCKETS);
+		protected LongAdder			sum		= new LongAdder();
+		protected LongAccumulator	max		= new LongAccumulator(Math::max, 0L);
+		
+		protected static int indexOf(long value) {
+			if(value < INT_SUB_COUNT) return (int)value;
+			
+			int exponent = 63 - Long.numberOfLeadingZeros(value);
+			int subBucket = (int)(value >>> (exponent - INT_SUB_BITS)) - INT_SUB_COUNT;
+			return (exponent - INT_SUB_BITS + 1) * INT_SUB_COUNT + subBucket;
+		}
+		
+		/**
+		 * @return the lowest value of bucket
+		 */
+		protected static long valueOf(int index) {
+			if(index < INT_SUB_COUNT) return index;
+			if(index >= INT_BUCKETS) return Long.MAX_VALUE;
+			
+			int exponent = index / INT_SUB_COUNT + INT_SUB_BITS - 1;
+			int subBucket = index % INT_SUB_COUNT;
+			return (long)(INT_SUB_COUNT + subBucket) << (exponent - INT_SUB_BITS);
+		}
+		
+		public void record(long nanos) {
+			if(nanos < 0) nanos = 0;
+			
+			counts.incrementAndGet( indexOf(nanos) );
+			sum.add(nanos);
+			max.accumulate(nanos);
+		}
+		
+		public Snapshot snapshot() {
+			long[] copy = new long[INT_BUCKETS];
+			for(int i=0; i<INT_BUCKETS; i++) copy[i] = counts.get(i);
+			
+			return new Snapshot( copy, sum.sum(), max.get() );
+		}
+	}
+	
+	/**
+	 * JMX view of request processor metrics
+	 */
+	public static interface RequestMetricsMBean {
+		long getEnqueued();
+		long getSent();
+		long getSucceeded();
+		long getFailed();
+		long getErrors();
+		long getRetried();
+		long getDeadLettered();
+		long getRejected();
+		long getDropped();
+		long getSpilled();
+		long getDeduplicated();
+		int getQueueDepth();
+		double getSendRatePerSecond();
+		double getRateLimitPerSecond();
+		double getRateLimitStallMillis();
+		double getQueueWaitP99Millis();
+		double getSendP50Millis();
+		double getSendP99Millis();
+		double getEndToEndP99Millis();
+	}
+	
+	/**
+	 * Request processor hot path metrics: lock-free counters and latency histograms of enqueue-to-send (queue wait),
+	 * send duration, enqueue-to-processed (end-to-end) and rate limit stall time.
+	 * Might be polled via snapshot() or exposed through JMX.
+	 */
+	public static class RequestMetrics implements RequestMetricsMBean {
+		protected static final String STR_OBJECT_NAME	= "CrptApi:type=RequestProcessor,name=%s";
+		protected static final String STR_SNAPSHOT		= "RequestMetrics snapshot: {enqueued=%d, sent=%d, succeeded=%d, failed=%d, " +
+				"errors=%d, retried=%d, deadLettered=%d, rejected=%d, dropped=%d, spilled=%d, deduplicated=%d, queueDepth=%d, sendRate=%.2f/s, rateLimit=%.2f/s, rateLimitStall=%.3f ms," +
+				"\n\tqueueWait=%s,\n\tsend=%s,\n\tendToEnd=%s,\n\trateLimitStall=%s}";
+		
+		/**
+		 * Immutable metrics state at some moment
+		 */
+		public static class Snapshot {
+			public final long		enqueued;
+			public final long		sent;
+			public final long		succeeded;
+			public final long		failed;
+			public final long		errors;
+			public final long		retried;
+			public final long		deadLettered;
+			public final long		rejected;
+			public final long		dropped;
+			public final long		spilled;
+			public final long		deduplicated;
+			public final int		queueDepth;
+			public final double		sendRatePerSecond;
+			public final double		rateLimitPerSecond;
+			public final long		rateLimitStallNanos;
+			public final LatencyHistogram.Snapshot queueWait;
+			public final LatencyHistogram.Snapshot send;
+			public final LatencyHistogram.Snapshot endToEnd;
+			public final LatencyHistogram.Snapshot rateLimitStall;
+			
+			protected Snapshot(RequestMetrics metrics, double sendRatePerSecond) {
+				enqueued				= metrics.enqueued.sum();
+				sent					= metrics.sent.sum();
+				succeeded				= metrics.succeeded.sum();
+				failed					= metrics.failed.sum();
+				errors					= metrics.errors.sum();
+				retried					= metrics.retried.sum();
+				deadLettered			= metrics.deadLettered.sum();
+				rejected				= metrics.rejected.sum();
+				dropped					= metrics.dropped.sum();
+				spilled					= metrics.spilled.sum();
+				deduplicated			= metrics.deduplicated.sum();
+				queueDepth				= metrics.getQueueDepth();
+				this.sendRatePerSecond	= sendRatePerSecond;
+				rateLimitPerSecond		= metrics.getRateLimitPerSecond();
+				rateLimitStallNanos		= metrics.rateLimitStallNanos.sum();
+				queueWait				= metrics.queueWait.snapshot();
+				send					= metrics.send.snapshot();
+				endToEnd				= metrics.endToEnd.snapshot();
+				rateLimitStall			= metrics.rateLimitStall.snapshot();
+			}
+			
+			@Override
+			public String toString() {
+				return String.format(STR_SNAPSHOT, enqueued, sent, succeeded, failed, errors, retried, deadLettered, 
+						rejected, dropped, spilled, deduplicated, queueDepth, sendRatePerSecond, rateLimitPerSecond, rateLimitStallNanos / 1e6, 
+						queueWait, send, endToEnd, rateLimitStall);
+			}
+		}
+		
+		protected LongAdder			enqueued			= new LongAdder();
+		protected LongAdder			sent				= new LongAdder();
+		protected LongAdder			succeeded			= new LongAdder();
+		protected LongAdder			failed				= new LongAdder();
+		protected LongAdder			errors				= new LongAdder();
+		protected LongAdder			retried				= new LongAdder();
+		protected LongAdder			deadLettered		= new LongAdder();
+		protected LongAdder			rejected			= new LongAdder();
+		protected LongAdder			dropped				= new LongAdder();
+		protected LongAdder			spilled				= new LongAdder();
+		protected LongAdder			deduplicated		= new LongAdder();
+		protected LongAdder			rateLimitStallNanos	= new LongAdder();
+		protected LatencyHistogram	queueWait			= new LatencyHistogram();
+		protected LatencyHistogram	send				= new LatencyHistogram();
+		protected LatencyHistogram	endToEnd			= new LatencyHistogram();
+		protected LatencyHistogram	rateLimitStall		= new LatencyHistogram();
+		protected IntSupplier		queueDepth;
+		protected DoubleSupplier	rateLimitPerSecond;
+		
+		// previous snapshot point to calculate send rate over polling interval
+		protected long				lastSnapshotNanos	= System.nanoTime();
+		protected long				lastSnapshotSent	= 0L;
+		// previous JMX attribute reading - JMX poller and snapshot() callers do not disturb each other
+		protected long				lastPollNanos		= lastSnapshotNanos;
+		protected long				lastPollSent		= 0L;
+		
+		/**
+		 * @param queueDepth - current queue depth supplier
+		 * @param rateLimitPerSecond - configured rate limit in requests per second
+		 */
+		public RequestMetrics(IntSupplier queueDepth, double rateLimitPerSecond) {
+			this(queueDepth, () -> rateLimitPerSecond);
+		}
+		
+		/**
+		 * @param queueDepth - current queue depth supplier
+		 * @param rateLimitPerSecond - current rate limit (requests per second) supplier, rate might be adaptive
+		 */
+		public RequestMetrics(IntSupplier queueDepth, DoubleSupplier rateLimitPerSecond) {
+			String strQueueDepth = "queueDepth", strRateLimit = "rateLimitPerSecond";
+			
+			this.queueDepth			= Objects.requireNonNull(queueDepth, strQueueDepth);
+			this.rateLimitPerSecond	= Objects.requireNonNull(rateLimitPerSecond, strRateLimit);
+		}
+		
+		public void onEnqueued(Header message) {
+			message.setEnqueuedNanos( System.nanoTime() );
+			enqueued.increment();
+		}
+		
+		public void onRateLimitStall(long nanos) {
+			rateLimitStallNanos.add(nanos);
+			rateLimitStall.record(nanos);
+		}
+		
+		/**
+		 * Registers message sending start
+		 * @return sending start time (System.nanoTime)
+		 */
+		public long onSendStarted(Header message) {
+			long now = System.nanoTime();
+			if(message.getEnqueuedNanos() != 0L) queueWait.record( now - message.getEnqueuedNanos() );
+			
+			return now;
+		}
+		
+		/**
+		 * Registers remote API response
+		 * @param sendStartNanos - sending start time returned by onSendStarted()
+		 * @param success - message was created by remote API
+		 */
+		public void onSendCompleted(Header message, long sendStartNanos, boolean success) {
+			onSendCompleted(message, sendStartNanos, success, true);
+		}
+		
+		/**
+		 * Registers remote API response
+		 * @param sendStartNanos - sending start time returned by onSendStarted()
+		 * @param success - message was created by remote API
+		 * @param recordSend - send latency is recorded, false for all but one message of multi-document request
+		 */
+		public void onSendCompleted(Header message, long sendStartNanos, boolean success, boolean recordSend) {
+			long now = System.nanoTime();
+			
+			sent.increment();
+			if(success) succeeded.increment();
+			else failed.increment();
+			
+			if(recordSend) send.record(now - sendStartNanos);
+			if(message.getEnqueuedNanos() != 0L) endToEnd.record( now - message.getEnqueuedNanos() );
+		}
+		
+		/**
+		 * Registers message sending was failed by exception
+		 */
+		public void onSendError(Header message) {
+			errors.increment();
+			if(message != null && message.getEnqueuedNanos() != 0L) endToEnd.record( System.nanoTime() - message.getEnqueuedNanos() );
+		}
+		
+		public void onRetry(Header message) {
+			retried.increment();
+		}
+		
+		public void onDeadLetter(Header message) {
+			deadLettered.increment();
+		}
+		
+		public void onRejected(Header message) {
+			rejected.increment();
+		}
+		
+		public void onDropped(Header message) {
+			dropped.increment();
+		}
+		
+		public void onSpilled(Header message) {
+			spilled.increment();
+		}
+		
+		public void onDeduplicated(Header message) {
+			deduplicated.increment();
+		}
+		
+		/**
+		 * Pull-style metrics access, send rate is calculated over interval since previous snapshot
+		 */
+		public synchronized Snapshot snapshot() {
+			long now = System.nanoTime(), nowSent = sent.sum();
+			double rate = (now > lastSnapshotNanos) ? (nowSent - lastSnapshotSent) * 1e9 / (now - lastSnapshotNanos) : 0.0;
+			
+			lastSnapshotNanos	= now;
+			lastSnapshotSent	= nowSent;
+			
+			return new Snapshot(this, rate);
+		}
+		
+		/**
+		 * Registers metrics in platform MBean server
+		 * @param name - processor name distinguishing it from other ones
+		 * @return registered object name
+		 */
+		public ObjectName registerMBean(String name) throws JMException {
+			var objectName = new ObjectName( String.format(STR_OBJECT_NAME, ObjectName.quote(name)) );
+			ManagementFactory.getPlatformMBeanServer().registerMBean( new StandardMBean(this, RequestMetricsMBean.class), objectName );
+			
+			return objectName;
+		}
+		
+		@Override
+		public long getEnqueued() {
+			return enqueued.sum();
+		}
+		
+		@Override
+		public long getSent() {
+			return sent.sum();
+		}
+		
+		@Override
+		public long getSucceeded() {
+			return succeeded.sum();
+		}
+		
+		@Override
+		public long getFailed() {
+			return failed.sum();
+		}
+		
+		@Override
+		public long getErrors() {
+			return errors.sum();
+		}
+		
+		@Override
+		public long getRetried() {
+			return retried.sum();
+		}
+		
+		@Override
+		public long getDeadLettered() {
+			return deadLettered.sum();
+		}
+		
+		@Override
+		public long getRejected() {
+			return rejected.sum();
+		}
+		
+		@Override
+		public long getDropped() {
+			return dropped.sum();
+		}
+		
+		@Override
+		public long getSpilled() {
+			return spilled.sum();
+		}
+		
+		@Override
+		public long getDeduplicated() {
+			return deduplicated.sum();
+		}
+		
+		@Override
+		public int getQueueDepth() {
+			return queueDepth.getAsInt();
+		}
+		
+		// rate over interval since previous reading of this attribute
+		@Override
+		public synchronized double getSendRatePerSecond() {
+			long now = System.nanoTime(), nowSent = sent.sum();
+			double rate = (now > lastPollNanos) ? (nowSent - lastPollSent) * 1e9 / (now - lastPollNanos) : 0.0;
+			
+			lastPollNanos	= now;
+			lastPollSent	= nowSent;
+			
+			return rate;
+		}
+		
+		@Override
+		public double getRateLimitPerSecond() {
+			return rateLimitPerSecond.getAsDouble();
+		}
+		
+		@Override
+		public double getRateLimitStallMillis() {
+			return rateLimitStallNanos.sum() / 1e6;
+		}
+		
+		@Override
+		public double getQueueWaitP99Millis() {
+			return queueWait.snapshot().getPercentileNanos(0.99) / 1e6;
+		}
+		
+		@Override
+		public double getSendP50Millis() {
+			return send.snapshot().getPercentileNanos(0.5) / 1e6;
+		}
+		
+		@Override
+		public double getSendP99Millis() {
+			return send.snapshot().getPercentileNanos(0.99) / 1e6;
+		}
+		
+		@Override
+		public double getEndToEndP99Millis() {
+			return endToEnd.snapshot().getPercentileNanos(0.99) / 1e6;
+		}
+	}
+	
+	/**
+	 * Waiting strategy of lock-free queue producers (queue is full) and consumers (queue is empty):
+	 * SPIN - busy spin, lowest latency but burns CPU core per waiting thread even when idle,
+	 * YIELD - spin then yield processor to other threads, PARK - spin, yield, then park for growing time up to 1 ms
+	 */
+	public static enum WaitStrategy {
+		SPIN, YIELD, PARK;
+		
+		protected static final int	INT_SPINS			= 100;
+		protected static final int	INT_YIELDS			= 200;
+		protected static final long	LONG_MAX_PARK_NANOS	= TimeUnit.MILLISECONDS.toNanos(1);
+		
+		/**
+		 * Waits once
+		 * @param attempt - number of waits made already for the same condition
+		 */
+		public void idle(int attempt) {
+			if(this == SPIN || attempt < INT_SPINS) Thread.onSpinWait();
+			else if(this == YIELD || attempt < INT_YIELDS) Thread.yield();
+			else LockSupport.parkNanos( Math.min(1L << Math.min(attempt - INT_YIELDS, 20), LONG_MAX_PARK_NANOS) );
+		}
+	}
+	
+	/**
+	 * Bounded lock-free ring buffer queue (D. Vyukov's algorithm): producers and consumers claim slots by CAS
+	 * on their own position counters, each slot sequence tells whether it is ready to be written or read.
+	 * No locks are taken on put/take - waiting for space or elements is done by wait strategy.
+	 * Multi-producer and multi-consumer safe, so processor may run several workers over it.
+	 * Iterator, size and peek are weakly consistent. Element removed by value leaves its slot empty - 
+	 * consumers skip such slots, so it takes capacity until consumers pass it.
+	 *
+	 * @param <E> - element type
+	 */
+	public static class RingBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+		protected static final int INT_MAX_CAPACITY = 1 << 30;
+		
+		protected final int						capacity;
+		protected final int						mask;
+		protected final AtomicReferenceArray<E>	elements;
+		protected final AtomicLongArray			sequences;
+		protected final AtomicLong				tail		= new AtomicLong(); // next position to write
+		protected final AtomicLong				head		= new AtomicLong(); // next position to read
+		protected final WaitStrategy			waitStrategy;
+		
+		/**
+		 * @param capacity - minimal capacity, it is rounded up to power of two
+		 * @param waitStrategy - waiting strategy of blocking operations
+		 */
+		public RingBlockingQueue(int capacity, WaitStrategy waitStrategy) {
+			String strCapacity = "capacity", strWaitStrategy = "waitStrategy";
+			
+			if(capacity < 1 || capacity > INT_MAX_CAPACITY) throw new IllegalArgumentException(strCapacity);
+			this.capacity		= (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+			this.mask			= this.capacity - 1;
+			this.elements		= new AtomicReferenceArray<>(this.capacity);
+			this.sequences		= new AtomicLongArray(this.capacity);
+			this.waitStrategy	= Objects.requireNonNull(waitStrategy, strWaitStrategy);
+			
+			for(int i=0; i<this.capacity; i++) sequences.set(i, i);
+		}
+		
+		@Override
+		public boolean offer(E e) {
+			String strElement = "e";
+			Objects.requireNonNull(e, strElement);
+			
+			long pos = tail.get();
+			while(true) {
+				int index = (int)pos & mask;
+				long diff = sequences.get(index) - pos;
+				
+				if(diff == 0) {
+					// slot is free - try to claim it
+					if( tail.compareAndSet(pos, pos + 1) ) {
+						elements.lazySet(index, e);
+						sequences.lazySet(index, pos + 1); // publish element to consumers
+						return true;
+					}
+					pos = tail.get();
+				}
+				else if(diff < 0) return false; // slot still holds element of previous lap - queue is full
+				else pos = tail.get(); // other producer has claimed slot already
+			}
+		}
+		
+		@Override
+		public E poll() {
+			long pos = head.get();
+			while(true) {
+				int index = (int)pos & mask;
+				long diff = sequences.get(index) - (pos + 1);
+				
+				if(diff == 0) {
+					// slot is published - try to claim it
+					if( head.compareAndSet(pos, pos + 1) ) {
+						// slot is emptied atomically - element is either polled or removed by value, never both
+						E e = elements.getAndSet(index, null);
+						sequences.lazySet(index, pos + capacity); // free slot for the next lap producer
+						if(e != null) return e;
+					}
+					pos = head.get();
+				}
+				else if(diff < 0) return null; // nothing published yet - queue is empty
+				else pos = head.get(); // other consumer has claimed slot already
+			}
+		}
+		
+		@Override
+		public E peek() {
+			return elements.get( (int)head.get() & mask );
+		}
+		
+		@Override
+		public void put(E e) throws InterruptedException {
+			for(int attempt=0; !offer(e); attempt++) {
+				if( Thread.interrupted() ) throw new InterruptedException();
+				waitStrategy.idle(attempt);
+			}
+		}
+		
+		@Override
+		public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+			long deadline = System.nanoTime() + unit.toNanos(timeout);
+			
+			for(int attempt=0; !offer(e); attempt++) {
+				if( Thread.interrupted() ) throw new InterruptedException();
+				if(System.nanoTime() - deadline >= 0) return false;
+				waitStrategy.idle(attempt);
+			}
+			return true;
+		}
+		
+		@Override
+		public E take() throws InterruptedException {
+			E e;
+			for(int attempt=0; (e = poll()) == null; attempt++) {
+				if( Thread.interrupted() ) throw new InterruptedException();
+				waitStrategy.idle(attempt);
+			}
+			return e;
+		}
+		
+		@Override
+		public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+			long deadline = System.nanoTime() + unit.toNanos(timeout);
+			
+			E e;
+			for(int attempt=0; (e = poll()) == null; attempt++) {
+				if( Thread.interrupted() ) throw new InterruptedException();
+				if(System.nanoTime() - deadline >= 0) return null;
+				waitStrategy.idle(attempt);
+			}
+			return e;
+		}
+		
+		@Override
+		public int size() {
+			// read head first - tail only grows meanwhile, so result is never negative for quiescent queue
+			long first = head.get();
+			long size = tail.get() - first;
+			return (int)Math.max( 0L, Math.min(size, capacity) );
+		}
+		
+		@Override
+		public int remainingCapacity() {
+			return capacity - size();
+		}
+		
+		@Override
+		public int drainTo(Collection<? super E> c) {
+			return drainTo(c, Integer.MAX_VALUE);
+		}
+		
+		@Override
+		public int drainTo(Collection<? super E> c, int maxElements) {
+			String strCollection = "c";
+			Objects.requireNonNull(c, strCollection);
+			if(c == this) throw new IllegalArgumentException(strCollection);
+			
+			int count = 0;
+			E e;
+			while(count < maxElements && (e = poll()) != null) {
+				c.add(e);
+				count++;
+			}
+			return count;
+		}
+		
+		/**
+		 * Removes one published element equal to given one, it is not moved - its slot is left empty
+		 */
+		@Override
+		public boolean remove(Object o) {
+			if(o == null) return false;
+			
+			for(long pos = head.get(), last = tail.get(); pos < last; pos++) {
+				int index = (int)pos & mask;
+				E e = elements.get(index);
+				
+				if( e != null && o.equals(e) && sequences.get(index) == pos + 1 && elements.compareAndSet(index, e, null) ) 
+					return true;
+			}
+			return false;
+		}
+		
+		/**
+		 * @return iterator over snapshot of currently published elements
+		 */
+		@Override
+		public Iterator<E> iterator() {
+			List<E> snapshot = new ArrayList<>();
+			for(long pos = head.get(), last = tail.get(); pos < last; pos++) {
+				E e = elements.get( (int)pos & mask );
+				if(e != null) snapshot.add(e);
+			}
+			return Collections.unmodifiableList(snapshot).iterator();
+		}
+	}
+	
+	/**
+	 * Processor queue kinds: ARRAY - bounded array queue with single lock (up to 10000 elements by default),
+	 * LINKED - linked queue with separate put & take locks, capped by elements count only (memory is allocated on demand),
+	 * RING - bounded lock-free ring buffer, blocking operations wait by given wait strategy
+	 */
+	public static enum QueueStrategy {
+		ARRAY, LINKED, RING;
+		
+		/**
+		 * Creates queue of this kind
+		 * @param capacity - maximal elements count
+		 * @param waitStrategy - waiting strategy, RING queue only uses it
+		 */
+		public <E> BlockingQueue<E> newQueue(int capacity, WaitStrategy waitStrategy) {
+			if(this == ARRAY) return new ArrayBlockingQueue<>(capacity);
+			if(this == LINKED) return new LinkedBlockingQueue<>(capacity);
+			
+			return new RingBlockingQueue<>(capacity, waitStrategy);
+		}
+	}
+	
+	/**
+	 * Fair scheduling processor queue: documents are split into priority classes (i.e. by docType / importRequest),
+	 * higher class is always served first (class 0 is the highest one). Within class documents of each tenant
+	 * (i.e. participantInn) are queued separately and served by weighted deficit round robin - tenant gets
+	 * up to its weight documents per round, so single tenant flooding the queue does not starve others.
+	 * Queue is bounded both by total capacity and per tenant one. Control messages (poison pill) are exempt of bounds 
+	 * and are served only when all tenant queues are empty. Wait time (offer to poll) is measured per tenant.
+	 * Tenant having no documents for idle time is forgotten (with its wait statistics) when new tenant comes.
+	 *
+	 * @param <T> - message (document) type
+	 */
+	public static class FairScheduler<T extends Header> extends AbstractQueue<T> implements BlockingQueue<T> {
+		protected static final String STR_DEFAULT_TENANT	= "";
+		protected static final int	  INT_CLASS_URGENT		= 0;
+		protected static final int	  INT_CLASS_REGULAR		= 1;
+		protected static final int	  INT_CLASS_BULK		= 2;
+		
+		// GoF 'Builder' pattern implemented for convenient object instantiation - way not to specify all fields via constructor
+		public static class Builder<T extends Header> {
+			protected int					priorityClasses	= 1;
+			protected ToIntFunction<T>		priority		= document -> 0;
+			protected Function<T, String>	tenant			= document -> STR_DEFAULT_TENANT;
+			protected Map<String, Integer>	weights			= new HashMap<>();
+			protected int					defaultWeight	= 1;
+			protected int					capacity		= 10000;
+			protected int					tenantCapacity	= 1000;
+			protected long					idleTenantMillis = 60000L;
+			
+			public Builder() { }
+			
+			/**
+			 * @param priorityClasses - priority classes quantity
+			 * @param priority - document priority class from 0 (the highest) to priorityClasses - 1, out of range value is clamped
+			 */
+			public Builder<T> priority(int priorityClasses, ToIntFunction<T> priority) {
+				this.priorityClasses	= priorityClasses;
+				this.priority			= priority;
+				return this;
+			}
+			
+			/**
+			 * @param tenant - document tenant (i.e. participantInn), null tenant is the default one
+			 */
+			public Builder<T> tenant(Function<T, String> tenant) {
+				this.tenant = tenant;
+				return this;
+			}
+			
+			/**
+			 * @param tenant - tenant
+			 * @param weight - documents quantity tenant gets per round
+			 */
+			public Builder<T> weight(String tenant, int weight) {
+				weights.put( Objects.toString(tenant, STR_DEFAULT_TENANT), weight );
+				return this;
+			}
+			
+			public Builder<T> defaultWeight(int defaultWeight) {
+				this.defaultWeight = defaultWeight;
+				return this;
+			}
+			
+			/**
+			 * @param capacity - maximal documents quantity queued
+			 * @param tenantCapacity - maximal documents quantity queued per tenant
+			 */
+			public Builder<T> capacity(int capacity, int tenantCapacity) {
+				this.capacity		= capacity;
+				this.tenantCapacity	= tenantCapacity;
+				return this;
+			}
+			
+			/**
+			 * @param idleTenantMillis - time tenant having no documents is kept for
+			 */
+			public Builder<T> idleTenantMillis(long idleTenantMillis) {
+				this.idleTenantMillis = idleTenantMillis;
+				return this;
+			}
+			
+			public FairScheduler<T> build() {
+				var validation = new Validation()
+						.check("priorityClasses", priorityClasses >= 1)
+						.check("priority", priority != null)
+						.check("tenant", tenant != null)
+						.check("weights", weights.values().stream().allMatch( weight -> weight != null && weight >= 1 ))
+						.check("defaultWeight", defaultWeight >= 1)
+						.check("capacity", capacity >= 1)
+						.check("tenantCapacity", tenantCapacity >= 1 && tenantCapacity <= capacity)
+						.check("idleTenantMillis", idleTenantMillis >= 0);
+				validation.throwIfInvalid();
+				
+				return new FairScheduler<>(this);
+			}
+		}
+		
+		/**
+		 * Preset of documents scheduler: urgent document types first, import requests (bulk) last,
+		 * tenant is participant (owner if there is no participant)
+		 * @param urgentDocTypes - urgent document types
+		 */
+		public static Builder<Document> forDocuments(Collection<String> urgentDocTypes) {
+			String strUrgentDocTypes = "urgentDocTypes";
+			Set<String> urgent = Set.copyOf( Objects.requireNonNull(urgentDocTypes, strUrgentDocTypes) );
+			
+			return new Builder<Document>()
+					.priority(INT_CLASS_BULK + 1, document -> urgent.contains( document.getDocType() ) ? INT_CLASS_URGENT :
+						Boolean.TRUE.equals( document.getImportRequest() ) ? INT_CLASS_BULK : INT_CLASS_REGULAR)
+					.tenant( document -> (document.getParticipantInn() != null) ? document.getParticipantInn() : document.getOwnerInn() );
+		}
+		
+		protected static class Entry<T> {
+			protected final T		item;
+			protected final long	offeredNanos;
+			
+			protected Entry(T item, long offeredNanos) {
+				this.item			= item;
+				this.offeredNanos	= offeredNanos;
+			}
+		}
+		
+		/**
+		 * Tenant documents of single priority class
+		 */
+		protected static class Flow<T> {
+			protected final Tenant<T>		tenant;
+			protected final Deque<Entry<T>>	entries	= new ArrayDeque<>();
+			// documents quantity flow still might be served in current round
+			protected int					deficit	= 0;
+			
+			protected Flow(Tenant<T> tenant) {
+				this.tenant = tenant;
+			}
+		}
+		
+		protected static class Tenant<T> {
+			protected final String				name;
+			protected final int					weight;
+			protected final Flow<T>[]			flows;
+			protected final Condition			notFull;
+			protected final LatencyHistogram	wait	= new LatencyHistogram();
+			protected int						size	= 0;
+			// time (System.nanoTime) tenant got no documents
+			protected long						idleSince;
+			
+			@SuppressWarnings({"unchecked", "rawtypes"})
+			protected Tenant(String name, int weight, int priorityClasses, Condition notFull) {
+				this.name		= name;
+				this.weight		= weight;
+				this.flows		= new Flow[priorityClasses];
+				this.notFull	= notFull;
+				this.idleSince	= System.nanoTime();
+				for(int i=0; i<priorityClasses; i++) flows[i] = new Flow<>(this);
+			}
+		}
+		
+		protected final ToIntFunction<T>		priority;
+		protected final Function<T, String>		tenantOf;
+		protected final Map<String, Integer>	weights;
+		protected final int						defaultWeight;
+		protected final int						capacity;
+		protected final int						tenantCapacity;
+		protected final long					idleTenantNanos;
+		protected final Map<String, Tenant<T>>	tenants	= new HashMap<>();
+		protected long							sweptNanos = System.nanoTime();
+		// flows having documents per priority class, the head flow is served
+		protected final Deque<Flow<T>>[]		active;
+		protected final Deque<T>				control	= new ArrayDeque<>();
+		protected final ReentrantLock			lock	= new ReentrantLock();
+		protected final Condition				notEmpty = lock.newCondition();
+		protected final Condition				notFull	= lock.newCondition();
+		protected int							size	= 0;
+		
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		protected FairScheduler(Builder<T> builder) {
+			assert builder != null;
+			
+			priority		= builder.priority;
+			tenantOf		= builder.tenant;
+			weights			= Map.copyOf(builder.weights);
+			defaultWeight	= builder.defaultWeight;
+			capacity		= builder.capacity;
+			tenantCapacity	= builder.tenantCapacity;
+			idleTenantNanos	= TimeUnit.MILLISECONDS.toNanos(builder.idleTenantMillis);
+			active			= new Deque[builder.priorityClasses];
+			for(int i=0; i<active.length; i++) active[i] = new ArrayDeque<>();
+		}
+		
+		protected static boolean isControl(Header message) {
+			return message.getControlCommand() == MsgCommand.POISON_PILL;
+		}
+		
+		protected Tenant<T> tenantOf(T item) {
+			String name = Objects.toString( tenantOf.apply(item), STR_DEFAULT_TENANT );
+			
+			Tenant<T> tenant = tenants.get(name);
+			if(tenant == null) {
+				sweepIdle();
+				tenant = new Tenant<>(name, weights.getOrDefault(name, defaultWeight), active.length, lock.newCondition());
+				tenants.put(name, tenant);
+			}
+			return tenant;
+		}
+		
+		/**
+		 * Forgets tenants having no documents for idle time, once per idle time at most
+		 */
+		protected void sweepIdle() {
+			long now = System.nanoTime();
+			if(now - sweptNanos < idleTenantNanos) return;
+			
+			sweptNanos = now;
+			// tenant having no documents has no producers waiting for its room
+			tenants.values().removeIf( tenant -> tenant.size == 0 && now - tenant.idleSince >= idleTenantNanos );
+		}
+		
+		protected boolean isFull(Tenant<T> tenant) {
+			return size >= capacity || tenant.size >= tenantCapacity;
+		}
+		
+		protected void enqueue(T item, Tenant<T> tenant) {
+			int cls = Math.max( 0, Math.min(active.length - 1, priority.applyAsInt(item)) );
+			Flow<T> flow = tenant.flows[cls];
+			
+			if( flow.entries.isEmpty() ) active[cls].addLast(flow);
+			flow.entries.addLast( new Entry<>(item, System.nanoTime()) );
+			tenant.size++;
+			size++;
+			notEmpty.signal();
+		}
+		
+		/**
+		 * @return the first flow of the highest priority class having documents, null if there are no documents
+		 */
+		protected Deque<Flow<T>> nextClass() {
+			for(Deque<Flow<T>> flows : active) {
+				if( !flows.isEmpty() ) return flows;
+			}
+			return null;
+		}
+		
+		protected T dequeue() {
+			Deque<Flow<T>> flows = nextClass();
+			if(flows == null) return control.pollFirst();
+			
+			Flow<T> flow = flows.peekFirst();
+			// flow turn begins - it gets its weight quantum
+			if(flow.deficit == 0) flow.deficit = flow.tenant.weight;
+			
+			Entry<T> entry = flow.entries.pollFirst();
+			flow.deficit--;
+			
+			if( flow.entries.isEmpty() ) {
+				flows.pollFirst();
+				flow.deficit = 0;
+			}else if(flow.deficit == 0) {
+				flows.addLast( flows.pollFirst() );
+			}
+			
+			Tenant<T> tenant = flow.tenant;
+			tenant.wait.record( System.nanoTime() - entry.offeredNanos );
+			
+			if(size-- == capacity) notFull.signalAll();
+			if(--tenant.size == 0) tenant.idleSince = System.nanoTime();
+			tenant.notFull.signal();
+			return entry.item;
+		}
+		
+		@Override
+		public boolean offer(T item) {
+			String strItem = "item";
+			Objects.requireNonNull(item, strItem);
+			
+			lock.lock();
+			try {
+				if( isControl(item) ) {
+					control.addLast(item);
+					notEmpty.signal();
+					return true;
+				}
+				
+				Tenant<T> tenant = tenantOf(item);
+				if( isFull(tenant) ) return false;
+				
+				enqueue(item, tenant);
+				return true;
+			}finally {
+				lock.unlock();
+			}
+		}
+		
+		@Override
+		public boolean offer(T item, long timeout, TimeUnit unit) throws InterruptedException {
+			String strItem = "item";
+			Objects.requireNonNull(item, strItem);
+			long nanos = unit.toNanos(timeout);
+			
+			lock.lockInterruptibly();
+			try {
+				if( isControl(item) ) {
+					control.addLast(item);
+					notEmpty.signal();
+					return true;
+				}
+				
+				Tenant<T> tenant = tenantOf(item);
+				while( isFull(tenant) ) {
+					if(nanos <= 0) return false;
+					nanos = (size >= capacity) ? notFull.awaitNanos(nanos) : tenant.notFull.awaitNanos(nanos);
+					// idle tenant might be forgotten meanwhile
+					tenant = tenantOf(item);
+				}
+				
+				enqueue(item, tenant);
+				return true;
+			}finally {
+				lock.unlock();
+			}
+		}
+		
+		@Override
+		public void put(T item) throws InterruptedException {
+			String strItem = "item";
+			Objects.requireNonNull(item, strItem);
+			
+			lock.lockInterruptibly();
+			try {
+				if( isControl(item) ) {
+					control.addLast(item);
+					notEmpty.signal();
+					return;
+				}
+				
+				Tenant<T> tenant = tenantOf(item);
+				while( isFull(tenant) ) {
+					if(size >= capacity) notFull.await();
+					else tenant.notFull.await();
+					// idle tenant might be forgotten meanwhile
+					tenant = tenantOf(item);
+				}
+				
+				enqueue(item, tenant);
+			}finally {
+				lock.unlock();
+			}
+		}
+		
+		@Override
+		public T poll() {
+			lock.lock();
+			try {
+				return dequeue();
+			}finally {
+				lock.unlock();
+			}
+		}
+		
+		@Override
+		public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+			long nanos = unit.toNanos(timeout);
+			
+			lock.lockInterruptibly();
+			try {
+				while(size == 0 && control.isEmpty()) {
+					if(nanos <= 0) return null;
+					nanos = notEmpty.awaitNanos(nanos);
+				}
+				return dequeue();
+			}finally {
+				lock.unlock();
+			}
+		}
+		
+		@Override
+		public T take() throws InterruptedException {
+			lock.lockInterruptibly();
+			try {
+				while(size == 0 && control.isEmpty()) notEmpty.await();
+				return dequeue();
+			}finally {
+				lock.unlock();
+			}
+		}
+		
+		@Override
+		public T peek() {
+			lock.lock();
+			try {
+				Deque<Flow<T>> flows = nextClass();
+				return (flows == null) ? control.peekFirst() : flows.peekFirst().entries.peekFirst().item;
+			}finally {
+				lock.unlock();
+			}
+		}
+		
+		@Override
+		public int size() {
+			lock.lock();
+			try {
+				return size + control.size();
+			}finally {
+				lock.unlock();
+			}
+		}
+		
+		@Override
+		public int remainingCapacity() {
+			lock.lock();
+			try {
+				return capacity - size;
+			}finally {
+				lock.unlock();
+			}
+		}
+		
+		@Override
+		public int drainTo(Collection<? super T> c) {
+			return drainTo(c, Integer.MAX_VALUE);
+		}
+		
+		@Override
+		public int drainTo(Collection<? super T> c, int maxElements) {
+			String strC = "c";
+			Objects.requireNonNull(c, strC);
+			if(c == this) throw new IllegalArgumentException(strC);
+			
+			lock.lock();
+			try {
+				int count = 0;
+				for(T item; count < maxElements && (item = dequeue()) != null; count++) c.add(item);
+				return count;
+			}finally {
+				lock.unlock();
+			}
+		}
+		
+		/**
+		 * @return snapshot iterator of documents by priority classes and tenants, it is not the serving order
+		 */
+		@Override
+		public Iterator<T> iterator() {
+			lock.lock();
+			try {
+				List<T> snapshot = new ArrayList<>(size + control.size());
+				for(Deque<Flow<T>> flows : active) {
+					for(Flow<T> flow : flows) {
+						for(Entry<T> entry : flow.entries) snapshot.add(entry.item);
+					}
+				}
+				snapshot.addAll(control);
+				return Collections.unmodifiableList(snapshot).iterator();
+			}finally {
+				lock.unlock();
+			}
+		}
+		
+		/**
+		 * @return known tenants
+		 */
+		public Set<String> getTenants() {
+			lock.lock();
+			try {
+				return Set.copyOf( tenants.keySet() );
+			}finally {
+				lock.unlock();
+			}
+		}
+		
+		/**
+		 * @return documents quantity queued by tenant
+		 */
+		public int getTenantSize(String tenant) {
+			lock.lock();
+			try {
+				Tenant<T> state = tenants.get( Objects.toString(tenant, STR_DEFAULT_TENANT) );
+				return (state != null) ? state.size : 0;
+			}finally {
+				lock.unlock();
+			}
+		}
+		
+		/**
+		 * @return wait time (offer to poll) histogram of tenant documents, null if tenant is unknown
+		 */
+		public LatencyHistogram.Snapshot getTenantWait(String tenant) {
+			Tenant<T> state;
+			
+			lock.lock();
+			try {
+				state = tenants.get( Objects.toString(tenant, STR_DEFAULT_TENANT) );
+			}finally {
+				lock.unlock();
+			}
+			return (state != null) ? state.wait.snapshot() : null;
+		}
+	}
+	
+	/**
+	 * Asynchronous events bus - publishers put events into bounded ring buffer and return immediately,
+	 * dedicated consumer thread drains it calling handler (i.e. console output), so request threads never wait
+	 * for handler I/O. Buffer overflow is resolved by policy: BLOCK publisher (backpressure), DROP_NEWEST or DROP_OLDEST event.
+	 *
+	 * @param <T> - message (document) type
+	 */
+	public static class EventBus<T extends Header> implements AutoCloseable {
+		public static enum OverflowPolicy { BLOCK, DROP_NEWEST, DROP_OLDEST }
+		
+		protected static final String STR_DROPPED = "EventBus dropped %d events due to buffer overflow";
+		
+		/**
+		 * Event carries message snapshot taken by publisher - message goes on being processed (and changed) after publishing
+		 */
+		protected static class Event<T> {
+			protected final T			data;
+			protected final Throwable	error;
+			
+			protected Event(T data, Throwable error) {
+				this.data		= data;
+				this.error		= error;
+			}
+		}
+		
+		protected BlockingQueue<Event<T>>	buffer;
+		protected OverflowPolicy			policy;
+		protected Consumer<T>				handler;
+		protected Thread					consumer;
+		protected LongAdder					dropped		= new LongAdder();
+		protected volatile boolean			closed		= false;
+		// publishers check 'closed' and enqueue under read lock, close() sets it under write lock - 
+		// so no event is accepted after the last one
+		protected final ReadWriteLock		closing		= new ReentrantReadWriteLock();
+		// the last event, consumer thread completes after it
+		protected final Event<T>			endOfStream	= new Event<>(null, null);
+		
+		/**
+		 * Creates bus and starts its consumer thread
+		 * @param capacity - ring buffer capacity
+		 * @param policy - buffer overflow policy
+		 * @param handler - events handler, called by consumer thread only
+		 * @param threadName - consumer thread name
+		 */
+		public EventBus(int capacity, OverflowPolicy policy, Consumer<T> handler, String threadName) {
+			String strCapacity = "capacity", strPolicy = "policy", strHandler = "handler", strThreadName = "threadName";
+			
+			if(capacity < 1) throw new IllegalArgumentException(strCapacity);
+			this.buffer		= new ArrayBlockingQueue<>(capacity);
+			this.policy		= Objects.requireNonNull(policy, strPolicy);
+			this.handler	= Objects.requireNonNull(handler, strHandler);
+			
+			consumer = new Thread( this::drain, Objects.requireNonNull(threadName, strThreadName) );
+			consumer.start();
+		}
+		
+		protected void drain() {
+			try {
+				while(true) {
+					Event<T> event = buffer.take();
+					if(event == endOfStream) break;
+					
+					try {
+						if(event.error != null) {
+							event.error.printStackTrace();
+							continue;
+						}
+						
+						handler.accept(event.data);
+					}catch(Throwable ex) {
+						// faulty handler must not stop events delivery
+						ex.printStackTrace();
+					}
+				}
+			}catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			
+			long lost = dropped.sum();
+			if(lost > 0) System.err.println( String.format(STR_DROPPED, lost) );
+		}
+		
+		protected boolean offer(Event<T> event) {
+			closing.readLock().lock();
+			try {
+				if(closed) return false;
+				return enqueue(event);
+			}finally {
+				closing.readLock().unlock();
+			}
+		}
+		
+		protected boolean enqueue(Event<T> event) {
+			switch(policy) {
+			case BLOCK:
+				try {
+					buffer.put(event);
+					return true;
+				}catch(InterruptedException ex) {
+					// keep interruption for caller, event is lost
+					Thread.currentThread().interrupt();
+					break;
+				}
+			case DROP_NEWEST:
+				if( buffer.offer(event) ) return true;
+				break;
+			case DROP_OLDEST:
+				// the last event is put after all accepted ones only - it is never dropped here
+				while( !buffer.offer(event) ) {
+					if(buffer.poll() != null) dropped.increment();
+				}
+				return true;
+			default:
+				assert false;
+			}
+			
+			dropped.increment();
+			return false;
+		}
+		
+		/**
+		 * Publishes message event on behalf of current thread
+		 * @param data - message (document)
+		 * @param command - command to report message with, null to keep message one
+		 * @return true if event was accepted, false if it was dropped
+		 */
+		public boolean publish(T data, MsgCommand command) {
+			String strData = "data";
+			Objects.requireNonNull(data, strData);
+			if(closed) return false;
+			
+			// copy keeps message class
+			@SuppressWarnings("unchecked")
+			T snapshot = (T)data.copy();
+			if(command != null) snapshot.setControlCommand(command);
+			snapshot.setEventSource( Thread.currentThread().getName() );
+			
+			return offer( new Event<>(snapshot, null) );
+		}
+		
+		/**
+		 * Publishes error to be logged by consumer thread
+		 * @param error - error
+		 * @return true if event was accepted, false if it was dropped
+		 */
+		public boolean publishError(Throwable error) {
+			String strError = "error";
+			Objects.requireNonNull(error, strError);
+			
+			return offer( new Event<>(null, error) );
+		}
+		
+		public long getDropped() {
+			return dropped.sum();
+		}
+		
+		/**
+		 * Stops accepting events, waits for all accepted ones are handled. Caller interruption does not break closing
+		 * (accepted events are not lost) - it is restored for caller after it.
+		 * Publishers blocked on full buffer complete first, consumer thread is running meanwhile.
+		 */
+		@Override
+		public void close() {
+			boolean interrupted = false;
+			
+			closing.writeLock().lock();
+			try {
+				closed = true;
+			}finally {
+				closing.writeLock().unlock();
+			}
+			
+			while(true) {
+				try {
+					buffer.put(endOfStream);
+					break;
+				}catch(InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+			while( consumer.isAlive() ) {
+				try {
+					consumer.join();
+				}catch(InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+			if(interrupted) Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Circuit breaker around remote API sender. CLOSED - calls pass, their outcomes are kept in sliding window of
+	 * the last 'windowSize' calls; breaker gets OPEN as soon as failure rate (exceptions, 5xx and 429 responses) or
+	 * slow calls rate reaches its threshold. OPEN - calls are rejected at once by CallNotPermittedException
+	 * (retry engine parks such documents in its delay queue) until wait time is over. HALF_OPEN - limited quantity
+	 * of trial calls pass, breaker gets CLOSED if their rates are below thresholds, OPEN again otherwise.
+	 */
+	public static class CircuitBreaker {
+		public static enum State { CLOSED, OPEN, HALF_OPEN }
+		
+		/**
+		 * Call was rejected by open circuit breaker - remote API was not called at all
+		 */
+		public static class CallNotPermittedException extends RuntimeException {
+			private static final long serialVersionUID = 1L;
+			
+			protected static final String STR_NOT_PERMITTED = "Circuit breaker '%s' is %s, call is not permitted";
+			
+			public CallNotPermittedException(String name, State state) {
+				super( String.format(STR_NOT_PERMITTED, name, state) );
+			}
+		}
+		
+		// GoF 'Builder' pattern implemented for convenient object instantiation - way not to specify all fields via constructor
+		public static class Builder {
+			protected String	name					= "default";
+			protected int		windowSize				= 100;
+			protected int		minimumCalls			= 20;
+			protected double	failureRateThreshold	= 50.0;
+			protected double	slowCallRateThreshold	= 100.0;
+			protected long		slowCallDurationMillis	= 60000L;
+			protected long		waitInOpenMillis		= 30000L;
+			protected int		halfOpenCalls			= 5;
+			
+			public Builder() { }
+			
+			public Builder name(String name) {
+				this.name = name;
+				return this;
+			}
+			
+			/**
+			 * @param windowSize - quantity of the last calls rates are calculated by
+			 * @param minimumCalls - quantity of calls needed to calculate rates at all
+			 */
+			public Builder window(int windowSize, int minimumCalls) {
+				this.windowSize		= windowSize;
+				this.minimumCalls	= minimumCalls;
+				return this;
+			}
+			
+			/**
+			 * @param failureRateThreshold - failed calls percentage breaker gets open by
+			 */
+			public Builder failureRateThreshold(double failureRateThreshold) {
+				this.failureRateThreshold = failureRateThreshold;
+				return this;
+			}
+			
+			/**
+			 * @param slowCallRateThreshold - slow calls percentage breaker gets open by
+			 * @param slowCallDurationMillis - call duration the call is treated as slow from
+			 */
+			public Builder slowCalls(double slowCallRateThreshold, long slowCallDurationMillis) {
+				this.slowCallRateThreshold	= slowCallRateThreshold;
+				this.slowCallDurationMillis	= slowCallDurationMillis;
+				return this;
+			}
+			
+			public Builder waitInOpenMillis(long waitInOpenMillis) {
+				this.waitInOpenMillis = waitInOpenMillis;
+				return this;
+			}
+			
+			/**
+			 * @param halfOpenCalls - quantity of trial calls permitted in HALF_OPEN state
+			 */
+			public Builder halfOpenCalls(int halfOpenCalls) {
+				this.halfOpenCalls = halfOpenCalls;
+				return this;
+			}
+			
+			public CircuitBreaker build() {
+				var validation = new Validation()
+						.check("name", name != null && !name.isBlank())
+						.check("windowSize", windowSize >= 1)
+						.check("minimumCalls", minimumCalls >= 1 && minimumCalls <= windowSize)
+						.check("failureRateThreshold", failureRateThreshold > 0.0 && failureRateThreshold <= 100.0)
+						.check("slowCallRateThreshold", slowCallRateThreshold > 0.0 && slowCallRateThreshold <= 100.0)
+						.check("slowCallDurationMillis", slowCallDurationMillis >= 1)
+						.check("waitInOpenMillis", waitInOpenMillis >= 0)
+						.check("halfOpenCalls", halfOpenCalls >= 1);
+				validation.throwIfInvalid();
+				
+				return new CircuitBreaker(this);
+			}
+		}
+		
+		protected final String		name;
+		protected final int			minimumCalls;
+		protected final double		failureRateThreshold;
+		protected final double		slowCallRateThreshold;
+		protected final long		slowCallDurationNanos;
+		protected final long		waitInOpenNanos;
+		protected final int			halfOpenCalls;
+		// sliding window of calls outcomes (ring buffer) and counters over it
+		protected final boolean[]	failedCalls;
+		protected final boolean[]	slowCalls;
+		protected int				windowIndex		= 0;
+		protected int				windowCalls		= 0;
+		protected int				windowFailed	= 0;
+		protected int				windowSlow		= 0;
+		protected State				state			= State.CLOSED;
+		protected long				openedNanos		= 0L;
+		protected int				trialsPermitted	= 0;
+		// state changes counter - permit is tagged by it, so outcome of call permitted in previous state is not counted
+		protected long				generation		= 0L;
+		protected LongAdder			notPermitted	= new LongAdder();
+		
+		protected CircuitBreaker(Builder builder) {
+			assert builder != null;
+			
+			name					= builder.name;
+			minimumCalls			= builder.minimumCalls;
+			failureRateThreshold	= builder.failureRateThreshold;
+			slowCallRateThreshold	= builder.slowCallRateThreshold;
+			slowCallDurationNanos	= TimeUnit.MILLISECONDS.toNanos(builder.slowCallDurationMillis);
+			waitInOpenNanos			= TimeUnit.MILLISECONDS.toNanos(builder.waitInOpenMillis);
+			halfOpenCalls			= builder.halfOpenCalls;
+			failedCalls				= new boolean[builder.windowSize];
+			slowCalls				= new boolean[builder.windowSize];
+		}
+		
+		/**
+		 * Asks permission for a call
+		 * @return permit to register call outcome by (see onResult), -1 if call has to be rejected
+		 */
+		public synchronized long tryPermit() {
+			if(state == State.OPEN) {
+				if(System.nanoTime() - openedNanos < waitInOpenNanos) return -1L;
+				transitTo(State.HALF_OPEN);
+			}
+			
+			if(state == State.HALF_OPEN) {
+				if(trialsPermitted >= halfOpenCalls) return -1L;
+				trialsPermitted++;
+			}
+			
+			return generation;
+		}
+		
+		/**
+		 * Checks call would be permitted now without taking permission (i.e. before rate limiter permit is spent on it)
+		 * @return true if call might be permitted, false if it would be rejected
+		 */
+		public synchronized boolean isCallPermitted() {
+			if(state == State.OPEN) return System.nanoTime() - openedNanos >= waitInOpenNanos;
+			return state == State.CLOSED || trialsPermitted < halfOpenCalls;
+		}
+		
+		/**
+		 * Registers permitted call outcome
+		 * @param permit - permit call was done by
+		 * @param failed - call was failed
+		 * @param durationNanos - call duration
+		 */
+		public synchronized void onResult(long permit, boolean failed, long durationNanos) {
+			// late result of call permitted in previous state (i.e. closed one before breaker got open) is not counted
+			if(permit != generation) return;
+			
+			boolean slow = durationNanos >= slowCallDurationNanos;
+			if(windowCalls == failedCalls.length) {
+				// the oldest outcome leaves the window
+				if( failedCalls[windowIndex] ) windowFailed--;
+				if( slowCalls[windowIndex] ) windowSlow--;
+			} else windowCalls++;
+			
+			failedCalls[windowIndex]	= failed;
+			slowCalls[windowIndex]		= slow;
+			if(failed) windowFailed++;
+			if(slow) windowSlow++;
+			windowIndex = (windowIndex + 1) % failedCalls.length;
+			
+			// all trial calls decide breaker state, in closed state there has to be enough calls for rates
+			int needed = (state == State.HALF_OPEN) ? halfOpenCalls : minimumCalls;
+			if(windowCalls < needed) return;
+			
+			if(getFailureRate() >= failureRateThreshold || getSlowCallRate() >= slowCallRateThreshold) transitTo(State.OPEN);
+			else if(state == State.HALF_OPEN) transitTo(State.CLOSED);
+		}
+		
+		protected void transitTo(State state) {
+			this.state = state;
+			generation++;
+			
+			// each state collects its own outcomes
+			windowIndex = windowCalls = windowFailed = windowSlow = 0;
+			trialsPermitted = 0;
+			if(state == State.OPEN) openedNanos = System.nanoTime();
+		}
+		
+		/**
+		 * @return true if response means remote API is not healthy (5xx, 429) - client errors (4xx) are not counted
+		 */
+		protected static boolean isFailure(int status) {
+			return status >= 500 || status == HttpStatus.TOO_MANY_REQUESTS.value();
+		}
+		
+		protected static boolean isFailure(Throwable ex) {
+			if(ex instanceof HttpStatusCodeException) return isFailure( ((HttpStatusCodeException)ex).getRawStatusCode() );
+			return true;
+		}
+		
+		/**
+		 * Wraps sender - call is rejected by CallNotPermittedException when breaker does not permit it
+		 * @param sender - remote API sender
+		 */
+		public <T> Function<T, ResponseEntity<?>> decorate(Function<T, ResponseEntity<?>> sender) {
+			String strSender = "sender";
+			Objects.requireNonNull(sender, strSender);
+			
+			return document -> {
+				long permit = tryPermit();
+				if(permit < 0) {
+					notPermitted.increment();
+					throw new CallNotPermittedException( name, getState() );
+				}
+				
+				long start = System.nanoTime();
+				try {
+					ResponseEntity<?> response = sender.apply(document);
+					onResult( permit, isFailure(response.getStatusCodeValue()), System.nanoTime() - start );
+					return response;
+				}catch(RuntimeException ex) {
+					onResult( permit, isFailure(ex), System.nanoTime() - start );
+					throw ex;
+				}
+			};
+		}
+		
+		/**
+		 * Wraps asynchronous sender - call is completed exceptionally by CallNotPermittedException 
+		 * when breaker does not permit it
+		 * @param sender - remote API asynchronous sender
+		 */
+		public <T> AsyncRestSender<T> decorateAsync(AsyncRestSender<T> sender) {
+			String strSender = "sender";
+			Objects.requireNonNull(sender, strSender);
+			
+			return document -> {
+				long permit = tryPermit();
+				if(permit < 0) {
+					notPermitted.increment();
+					return CompletableFuture.failedFuture( new CallNotPermittedException(name, getState()) );
+				}
+				
+				long start = System.nanoTime();
+				return sender.apply(document).whenComplete( (response, ex) -> {
+					Throwable error = (ex instanceof CompletionException && ex.getCause() != null) ? ex.getCause() : ex;
+					onResult( permit, (error != null) ? isFailure(error) : isFailure(response.getStatusCodeValue()), 
+							System.nanoTime() - start );
+				});
+			};
+		}
+		
+		public synchronized State getState() {
+			return state;
+		}
+		
+		/**
+		 * @return failed calls percentage in current state window
+		 */
+		public synchronized double getFailureRate() {
+			return (windowCalls > 0) ? 100.0 * windowFailed / windowCalls : 0.0;
+		}
+		
+		/**
+		 * @return slow calls percentage in current state window
+		 */
+		public synchronized double getSlowCallRate() {
+			return (windowCalls > 0) ? 100.0 * windowSlow / windowCalls : 0.0;
+		}
+		
+		/**
+		 * @return quantity of rejected calls
+		 */
+		public long getNotPermitted() {
+			return notPermitted.sum();
+		}
+		
+		/**
+		 * Registers call rejected outside of decorated sender (i.e. by processor before rate limiter permit)
+		 * @return exception the call is rejected by
+		 */
+		public CallNotPermittedException reject() {
+			notPermitted.increment();
+			return new CallNotPermittedException( name, getState() );
+		}
+		
+		public String getName() {
+			return name;
+		}
+	}
+	
+	/**
+	 * Retry policy: attempts limit and exponential backoff with jitter between attempts.
+	 * Delay before attempt N+1 is min(initialBackoff * multiplier^(N-1), maxBackoff), jitter part of it is randomized
+	 * (jitter 1.0 is "full jitter" - uniform in [0, delay]), so documents failed together are not retried together.
+	 */
+	public static class RetryPolicy {
+		protected static final String STR_POLICY = "RetryPolicy object: {maxAttempts='%d', initialBackoffMillis='%d', " +
+				"maxBackoffMillis='%d', multiplier='%s', jitter='%s'}";
+		
+		// GoF 'Builder' pattern implemented for convenient object instantiation - way not to specify all fields via constructor
+		public static class Builder {
+			protected int		maxAttempts				= 5;
+			protected long		initialBackoffMillis	= 500L;
+			protected long		maxBackoffMillis		= 60000L;
+			protected double	multiplier				= 2.0;
+			protected double	jitter					= 0.5;
+			
+			public Builder() { }
+			
+			/**
+			 * @param maxAttempts - maximal attempts count including the first one, 1 means no retries
+			 */
+			public Builder maxAttempts(int maxAttempts) {
+				this.maxAttempts = maxAttempts;
+				return this;
+			}
+			
+			public Builder initialBackoffMillis(long initialBackoffMillis) {
+				this.initialBackoffMillis = initialBackoffMillis;
+				return this;
+			}
+			
+			public Builder maxBackoffMillis(long maxBackoffMillis) {
+				this.maxBackoffMillis = maxBackoffMillis;
+				return this;
+			}
+			
+			public Builder multiplier(double multiplier) {
+				this.multiplier = multiplier;
+				return this;
+			}
+			
+			/**
+			 * @param jitter - randomized part of backoff delay from 0.0 (no jitter) to 1.0 (full jitter)
+			 */
+			public Builder jitter(double jitter) {
+				this.jitter = jitter;
+				return this;
+			}
+			
+			public RetryPolicy build() {
+				var validation = new Validation()
+						.check("maxAttempts", maxAttempts >= 1)
+						.check("initialBackoffMillis", initialBackoffMillis >= 0)
+						.check("maxBackoffMillis", maxBackoffMillis >= initialBackoffMillis)
+						.check("multiplier", multiplier >= 1.0)
+						.check("jitter", jitter >= 0.0 && jitter <= 1.0);
+				validation.throwIfInvalid();
+				
+				return new RetryPolicy(this);
+			}
+		}
+		
+		protected final int		maxAttempts;
+		protected final long	initialBackoffNanos;
+		protected final long	maxBackoffNanos;
+		protected final double	multiplier;
+		protected final double	jitter;
+		
+		protected RetryPolicy(Builder builder) {
+			assert builder != null;
+			
+			maxAttempts			= builder.maxAttempts;
+			initialBackoffNanos	= TimeUnit.MILLISECONDS.toNanos(builder.initialBackoffMillis);
+			maxBackoffNanos		= TimeUnit.MILLISECONDS.toNanos(builder.maxBackoffMillis);
+			multiplier			= builder.multiplier;
+			jitter				= builder.jitter;
+		}
+		
+		public int getMaxAttempts() {
+			return maxAttempts;
+		}
+		
+		/**
+		 * @param attempt - number of attempts made already (1 after the first failure)
+		 * @return true if one more attempt is allowed
+		 */
+		public boolean canRetry(int attempt) {
+			return attempt < maxAttempts;
+		}
+		
+		/**
+		 * @param attempt - number of attempts made already (1 after the first failure)
+		 * @return delay before the next attempt in nanoseconds
+		 */
+		public long backoffNanos(int attempt) {
+			double delay = Math.min( initialBackoffNanos * Math.pow(multiplier, Math.max(attempt - 1, 0)), maxBackoffNanos );
+			double randomized = delay * jitter * ThreadLocalRandom.current().nextDouble();
+			
+			return (long)(delay * (1.0 - jitter) + randomized);
+		}
+		
+		@Override
+		public String toString() {
+			return String.format(STR_POLICY, maxAttempts, TimeUnit.NANOSECONDS.toMillis(initialBackoffNanos), 
+					TimeUnit.NANOSECONDS.toMillis(maxBackoffNanos), multiplier, jitter);
+		}
+	}
+	
+	/**
+	 * Retry policies by remote API response status and by send exception type. Anything without policy is not retried.
+	 * RestTemplate reports 4xx/5xx statuses by HttpStatusCodeException - they are looked up by status as well.
+	 */
+	public static class RetryPolicies {
+		protected Map<Integer, RetryPolicy>						byStatus	= new HashMap<>();
+		protected Map<Class<? extends Throwable>, RetryPolicy>	byException	= new HashMap<>();
+		
+		/**
+		 * @return policies retrying throttled (429), unavailable (502, 503, 504) remote API and I/O errors 
+		 * with default backoff, documents rejected by open circuit breaker are parked for longer
+		 */
+		public static RetryPolicies defaults() {
+			var policy = new RetryPolicy.Builder().build();
+			var parking = new RetryPolicy.Builder()
+					.maxAttempts(20)
+					.initialBackoffMillis(1000L)
+					.maxBackoffMillis(30000L)
+					.build();
+			
+			return new RetryPolicies()
+					.onStatus(HttpStatus.TOO_MANY_REQUESTS, policy)
+					.onStatus(HttpStatus.BAD_GATEWAY, policy)
+					.onStatus(HttpStatus.SERVICE_UNAVAILABLE, policy)
+					.onStatus(HttpStatus.GATEWAY_TIMEOUT, policy)
+					.onException(IOException.class, policy)
+					.onException(CircuitBreaker.CallNotPermittedException.class, parking);
+		}
+		
+		public RetryPolicies onStatus(HttpStatus status, RetryPolicy policy) {
+			String strStatus = "status", strPolicy = "policy";
+			
+			byStatus.put( Objects.requireNonNull(status, strStatus).value(), Objects.requireNonNull(policy, strPolicy) );
+			return this;
+		}
+		
+		/**
+		 * Sets policy for exception type and all its subtypes without own policy, exception causes are looked up too
+		 */
+		public RetryPolicies onException(Class<? extends Throwable> type, RetryPolicy policy) {
+			String strType = "type", strPolicy = "policy";
+			
+			byException.put( Objects.requireNonNull(type, strType), Objects.requireNonNull(policy, strPolicy) );
+			return this;
+		}
+		
+		/**
+		 * @return policy for response status, null if it is not retried
+		 */
+		public RetryPolicy forStatus(int status) {
+			return byStatus.get(status);
+		}
+		
+		/**
+		 * @return policy for exception (the nearest superclass policy of exception or of its causes), null if it is not retried
+		 */
+		public RetryPolicy forException(Throwable ex) {
+			for(Throwable cause = ex; cause != null; cause = (cause.getCause() != cause) ? cause.getCause() : null) {
+				if(cause instanceof HttpStatusCodeException) return forStatus( ((HttpStatusCodeException)cause).getRawStatusCode() );
+				
+				for(Class<?> type = cause.getClass(); type != null && type != Object.class; type = type.getSuperclass()) {
+					RetryPolicy policy = byException.get(type);
+					if(policy != null) return policy;
+				}
+			}
+			
+			return null;
+		}
+	}
+	
+	/**
+	 * Receiver of documents processor has given up sending (not retried or retries are exhausted)
+	 *
+	 * @param <T> - message (document) type
+	 */
+	@FunctionalInterface
+	public static interface DeadLetterSink<T> {
+		/**
+		 * @param document - message (document)
+		 * @param lastResponse - the last remote API response, null if the last attempt was failed by exception
+		 * @param lastError - the last attempt exception, null if remote API responded
+		 */
+		void accept(T document, ResponseEntity<?> lastResponse, Throwable lastError);
+	}
+	
+	/**
+	 * Document waiting for its retry in processor delay queue
+	 */
+	protected static class DelayedRetry<T> implements Delayed {
+		protected final T		document;
+		protected final long	dueNanos;
+		
+		protected DelayedRetry(T document, long delayNanos) {
+			this.document = document;
+			this.dueNanos = System.nanoTime() + delayNanos;
+		}
+		
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+		
+		@Override
+		public int compareTo(Delayed other) {
+			if(other instanceof DelayedRetry) return Long.compare( dueNanos - ((DelayedRetry<?>)other).dueNanos, 0L );
+			return Long.compare( getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS) );
+		}
+	}
+	
+	/**
+	 * Bounded time-expiring concurrent cache keyed by primitive long (i.e. document id) - no key boxing, 
+	 * no per-entry objects. Keys are spread over lock striped open addressing hash tables (linear probing,
+	 * backward shift deletion), each stripe evicts its entries in insertion order when it is full.
+	 * Entry expires 'ttl' after it was put or refreshed, expired entry is treated as absent.
+	 *
+	 * @param <V> - value type
+	 */
+	public static class LongDedupCache<V> {
+		protected static final int	INT_STRIPES			= 64;
+		protected static final long	LONG_FNV_OFFSET		= 0xcbf29ce484222325L;
+		protected static final long	LONG_FNV_PRIME		= 0x100000001b3L;
+		
+		protected static class Stripe {
+			protected final long[]		keys;
+			protected final long[]		expiries;
+			protected final Object[]	values;
+			protected final int			mask;
+			protected final int			maxSize;
+			// keys in insertion order (ring buffer), removed keys are left there and skipped by eviction
+			protected final long[]		order;
+			protected int				orderHead	= 0;
+			protected int				orderSize	= 0;
+			protected int				size		= 0;
+			
+			protected Stripe(int maxSize) {
+				// load factor is kept not above 0.5 - probe sequences are short
+				int capacity = Integer.highestOneBit( Math.max(maxSize, 1) * 2 - 1 ) << 1;
+				
+				this.keys		= new long[capacity];
+				this.expiries	= new long[capacity];
+				this.values		= new Object[capacity];
+				this.mask		= capacity - 1;
+				this.maxSize	= maxSize;
+				this.order		= new long[maxSize];
+			}
+			
+			/**
+			 * @return slot index of key, or -(insertion slot + 1) if there is no key
+			 */
+			protected int find(long key) {
+				int i = (int)hash(key) & mask;
+				while(values[i] != null) {
+					if(keys[i] == key) return i;
+					i = (i + 1) & mask;
+				}
+				return -(i + 1);
+			}
+			
+			protected void removeAt(int i) {
+				values[i] = null;
+				size--;
+				
+				// shift back entries of the same probe sequence - no tombstones needed
+				for(int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+					int home = (int)hash(keys[j]) & mask;
+					boolean stays = (j > i) ? (home > i && home <= j) : (home > i || home <= j);
+					if(stays) continue;
+					
+					keys[i]		= keys[j];
+					expiries[i]	= expiries[j];
+					values[i]	= values[j];
+					values[j]	= null;
+					i = j;
+				}
+			}
+			
+			protected void insertAt(int i, long key, Object value, long expiry) {
+				keys[i]		= key;
+				expiries[i]	= expiry;
+				values[i]	= value;
+				size++;
+				
+				if(orderSize == order.length) evictOldest();
+				order[ (orderHead + orderSize) % order.length ] = key;
+				orderSize++;
+			}
+			
+			/**
+			 * Evicts the oldest key still present
+			 */
+			protected void evictOldest() {
+				while(orderSize > 0) {
+					long key = order[orderHead];
+					orderHead = (orderHead + 1) % order.length;
+					orderSize--;
+					
+					int i = find(key);
+					if(i >= 0) {
+						removeAt(i);
+						return;
+					}
+				}
+			}
+		}
+		
+		protected final Stripe[]	stripes;
+		protected final long		ttlNanos;
+		
+		/**
+		 * @param maxSize - maximal entries quantity
+		 * @param ttl - entry time to live
+		 * @param unit - time to live unit
+		 */
+		public LongDedupCache(int maxSize, long ttl, TimeUnit unit) {
+			String strMaxSize = "maxSize", strTtl = "ttl", strUnit = "unit";
+			
+			if(maxSize < 1) throw new IllegalArgumentException(strMaxSize);
+			if(ttl < 1) throw new IllegalArgumentException(strTtl);
+			Objects.requireNonNull(unit, strUnit);
+			
+			int stripeCount = Math.min( INT_STRIPES, Integer.highestOneBit(maxSize) );
+			int stripeSize = (maxSize + stripeCount - 1) / stripeCount;
+			
+			stripes = new Stripe[stripeCount];
+			for(int i=0; i<stripeCount; i++) stripes[i] = new Stripe(stripeSize);
+			ttlNanos = unit.toNanos(ttl);
+		}
+		
+		/**
+		 * 64-bit finalizer mixing all key bits into lower ones (MurmurHash3 fmix64)
+		 */
+		protected static long hash(long key) {
+			key ^= key >>> 33;
+			key *= 0xff51afd7ed558ccdL;
+			key ^= key >>> 33;
+			key *= 0xc4ceb9fe1a85ec53L;
+			key ^= key >>> 33;
+			return key;
+		}
+		
+		protected Stripe stripeOf(long key) {
+			// upper hash bits choose stripe, lower ones choose slot
+			return stripes[ (int)(hash(key) >>> 58) & (stripes.length - 1) ];
+		}
+		
+		/**
+		 * Converts string id to cache key: numeric id (up to 18 digits) is taken as is, any other one is hashed (FNV-1a)
+		 * @param id - string id, i.e. document docId
+		 */
+		public static long keyOf(CharSequence id) {
+			String strId = "id";
+			Objects.requireNonNull(id, strId);
+			
+			if(id.length() > 0 && id.length() <= 18 && Validation.isDigits(id)) return Long.parseLong( id.toString() );
+			
+			long hash = LONG_FNV_OFFSET;
+			for(int i=0; i<id.length(); i++) {
+				hash ^= id.charAt(i);
+				hash *= LONG_FNV_PRIME;
+			}
+			return hash;
+		}
+		
+		/**
+		 * Puts value unless there is live one already
+		 * @param key - key
+		 * @param value - value
+		 * @return live value of the key, null if given value was put
+		 */
+		@SuppressWarnings("unchecked")
+		public V putIfAbsent(long key, V value) {
+			String strValue = "value";
+			Objects.requireNonNull(value, strValue);
+			
+			Stripe stripe = stripeOf(key);
+			long now = System.nanoTime();
+			
+			synchronized(stripe) {
+				int i = stripe.find(key);
+				if(i >= 0) {
+					if(stripe.expiries[i] - now > 0) return (V)stripe.values[i];
+					stripe.removeAt(i);
+				}
+				
+				if(stripe.size >= stripe.maxSize) stripe.evictOldest();
+				stripe.insertAt( -(stripe.find(key) + 1), key, value, now + ttlNanos );
+				return null;
+			}
+		}
+		
+		/**
+		 * @return live value of the key, null if there is no one
+		 */
+		@SuppressWarnings("unchecked")
+		public V get(long key) {
+			Stripe stripe = stripeOf(key);
+			long now = System.nanoTime();
+			
+			synchronized(stripe) {
+				int i = stripe.find(key);
+				return (i >= 0 && stripe.expiries[i] - now > 0) ? (V)stripe.values[i] : null;
+			}
+		}
+		
+		/**
+		 * Restarts time to live of key in case it has given value still
+		 * @return true if entry was refreshed
+		 */
+		public boolean refresh(long key, V value) {
+			Stripe stripe = stripeOf(key);
+			
+			synchronized(stripe) {
+				int i = stripe.find(key);
+				if(i < 0 || stripe.values[i] != value) return false;
+				
+				stripe.expiries[i] = System.nanoTime() + ttlNanos;
+				return true;
+			}
+		}
+		
+		/**
+		 * Removes key in case it has given value still
+		 * @return true if entry was removed
+		 */
+		public boolean remove(long key, V value) {
+			Stripe stripe = stripeOf(key);
+			
+			synchronized(stripe) {
+				int i = stripe.find(key);
+				if(i < 0 || stripe.values[i] != value) return false;
+				
+				stripe.removeAt(i);
+				return true;
+			}
+		}
+		
+		/**
+		 * @return entries quantity including expired ones not evicted yet
+		 */
+		public int size() {
+			int result = 0;
+			for(Stripe stripe : stripes) {
+				synchronized(stripe) {
+					result += stripe.size;
+				}
+			}
+			return result;
+		}
+	}
+	
+	/**
+	 * Base abstract message (document) request processing runnable class
+	 *
+	 * @param <T> - message (document) type
+	 */
+	public static abstract class Request<T extends Header> implements Runnable {
+		protected static final String STR_REQUEST_ERROR = "Request (id=%s) was processed by remote API " + 
+				"with next error '%s', HTTP-response status '%s' expected!";
+		
+		protected Long			sleepTimeNanos	= -1L;
+		protected RateLimiter	rateLimiter		= null;
+		protected Consumer<T> 	actionHandler	= null;
+		protected Supplier<T>	messageFactory	= null;
+		protected EventBus<T>	eventBus		= null;
+		
+		protected void triggerEvent(T data, MsgCommand command) {
+			assert data != null;
+			
+			// events bus handles event by its own thread - current one goes on without waiting
+			if(eventBus != null) {
+				eventBus.publish(data, command);
+				return;
+			}
+			
+			if(actionHandler != null) {
+				if(command != null) data.setControlCommand(command);
+				data.setEventSource( Thread.currentThread().getName() );
+				actionHandler.accept(data);
+			}
+		}
+		
+		protected void triggerEvent(MsgCommand command) {
+			if(messageFactory != null) triggerEvent(messageFactory.get(), command);
+		}
+		
+		/**
+		 * Reports client about error (interruption or exception) happened while message (document) processing and logs it
+		 * @param data - message (document) was processed, might be null
+		 * @param ex - error
+		 */
+		protected void onError(T data, Throwable ex) {
+			MsgCommand err = (ex instanceof InterruptedException) ? MsgCommand.INTERRUPTED : MsgCommand.EXCEPTION;
+			if(data != null) triggerEvent(data, err);
+			else triggerEvent(err);
+			
+			logError(ex);
+		}
+		
+		protected void logError(Throwable ex) {
+			if(eventBus != null) eventBus.publishError(ex);
+			else ex.printStackTrace();
+		}
+		
+		public Request(Long requestLimit, TimeUnit timeUnit) {
+			String strTimeUnit = "timeUnit", strRequestLimit = "requestLimit";
+			
+			Objects.requireNonNull(timeUnit, strTimeUnit);
+			Objects.requireNonNull(requestLimit, strRequestLimit);
+			
+			// time unit duration in nanoseconds, covers all units (NANOSECONDS ... DAYS)
+			long multiplier = timeUnit.toNanos(1);
+			
+			if( (requestLimit > 0) && (requestLimit <= multiplier) ) {
+				sleepTimeNanos = multiplier / requestLimit;
+			} else throw new IllegalArgumentException(strRequestLimit);
+			
+			// by default no bursts are allowed - requests are spread evenly over time unit
+			rateLimiter = new TokenBucketRateLimiter(requestLimit, timeUnit, 1);
+		}
+		
+		/**
+		 * Replaces default token bucket rate limiter (i.e. to allow bursts or share one limiter between requests)
+		 * @param rateLimiter - rate limiter
+		 */
+		public void setRateLimiter(RateLimiter rateLimiter) {
+			String strRateLimiter = "rateLimiter";
+			this.rateLimiter = Objects.requireNonNull(rateLimiter, strRateLimiter);
+		}
+		
+		public RateLimiter getRateLimiter() {
+			return rateLimiter;
+		}
+		
+		public void setActionHandler(Consumer<T> actionHandler, Supplier<T>	messageFactory) {
+			this.actionHandler = actionHandler;
+			this.messageFactory = messageFactory;
+		}
+		
+		/**
+		 * Routes events and errors logging via asynchronous events bus instead of calling action handler directly
+		 * @param eventBus - events bus, null to call action handler by request thread
+		 */
+		public void setEventBus(EventBus<T> eventBus) {
+			this.eventBus = eventBus;
+		}
+	}
+	
+	/**
+	 * Send requests from user to remote API
+	 *
+	 * @param <T> - message (document) type
+	 * @param <U> - security key objects with toString() method defined
+	 */
+	public static class RequestProcessor<T extends Header, U> extends Request<T> {
+		protected static final String STR_THREAD_WORKER		= "%s-%d";
+		protected static final String STR_BATCH_RESPONSES	= "Batch sender returned %s responses for %d documents";
+		protected static final String STR_QUEUE_NOT_EMPTY	= "Queue can be replaced before processing is started only";
+		protected static final int	  INT_MAX_BUFFER_LENGTH	= 10000;
+		protected static final int	  INT_MAX_QUEUE_CAPACITY = RingBlockingQueue.INT_MAX_CAPACITY;
+		protected static final String STR_SEND_ERROR		= "Request (id=%s) was failed by error '%s'";
+		protected static final String STR_DOCUMENT_REJECTED	= "Request (id=%s) was rejected, processor queue is full";
+		protected static final String STR_DOCUMENT_DROPPED	= "Request (id=%s) was dropped to make room for newer one";
+		protected static final String STR_DUPLICATE_ID		= "Request (id=%s) is in process already";
+		protected static final String STR_NO_JOURNAL		= "Journal has to be set to spill documents to disk";
+		// the longest time worker waits for fresh document before it checks retries scheduled by other threads
+		protected static final long	  LONG_RETRY_POLL_NANOS	= TimeUnit.MILLISECONDS.toNanos(10);
+		
+		/**
+		 * Trace data (JSON of successfully created document placed to reservedB) rendering mode:
+		 * OFF - no trace data, EAGER - rendered right after response, LAZY - rendered when event handler reads it,
+		 * SAMPLED - lazy trace data for 1 of N documents only
+		 */
+		public static enum TraceMode { OFF, EAGER, LAZY, SAMPLED }
+		
+		/**
+		 * What non-blocking sending does with document when the queue is full: REJECT - document is rejected,
+		 * DROP_OLDEST - the oldest queued document is dropped to make room, SPILL_TO_DISK - document is kept by journal only
+		 * (not in memory) and read back by workers when the queue is drained
+		 */
+		public static enum OverflowPolicy { REJECT, DROP_OLDEST, SPILL_TO_DISK }
+		
+		protected BlockingQueue<T>					queue;
+		protected Function<T, ResponseEntity<?>> 	restSender;
+		protected AsyncRestSender<T>				asyncSender		= null;
+		protected Function<List<T>, List<ResponseEntity<?>>> batchSender = null;
+		protected int								batchSize		= 1;
+		protected long								batchLingerNanos = 0L;
+		protected TraceMode							traceMode		= TraceMode.LAZY;
+		protected int								traceSampleRate	= 1;
+		protected AtomicLong						traceCounter	= new AtomicLong();
+		protected RequestMetrics					metrics;
+		protected int								workerCount		= 1;
+		protected AtomicInteger						activeWorkers	= new AtomicInteger(1);
+		protected ExecutorService					sendExecutor	= null;
+		protected Semaphore							inFlight		= null;
+		protected int								maxInFlight		= 0;
+		protected DocumentJournal<T>				journal			= null;
+		protected AtomicBoolean						journalReplayed	= new AtomicBoolean(false);
+		protected RetryPolicies						retryPolicies	= null;
+		protected DeadLetterSink<T>					deadLetterSink	= null;
+		protected CircuitBreaker					circuitBreaker	= null;
+		protected DelayQueue<DelayedRetry<T>>		retries			= new DelayQueue<>();
+		// terminal message put aside out of the queue (it might be full), workers take it before queued documents
+		protected AtomicReference<T>				control			= new AtomicReference<>();
+		// documents taken by shared workers (see pollReady) but not sent for lack of permit and replayed ones
+		protected Deque<T>							heldBack		= new ConcurrentLinkedDeque<>();
+		protected OverflowPolicy					overflowPolicy	= OverflowPolicy.REJECT;
+		// futures of submitted documents in process by id, completed ones are removed at once
+		protected ConcurrentMap<Long, CompletableFuture<RequestResult>> completions = new ConcurrentHashMap<>();
+		// results of documents in process or created recently by deduplication key
+		protected LongDedupCache<CompletableFuture<RequestResult>> dedupCache = null;
+		protected ToLongFunction<T>					dedupKey		= null;
+		
+		public RequestProcessor(Long requestLimit, TimeUnit timeUnit, int requestBufferLength, 
+				Function<T, ResponseEntity<?>> restSender) {
+			super(requestLimit, timeUnit);
+			
+			String strBuffLen = "requestBufferLength", strRestSender = "restSender";
+					
+			if(requestBufferLength < 1 || requestBufferLength > INT_MAX_BUFFER_LENGTH) throw new IllegalArgumentException(strBuffLen);
+			queue = new ArrayBlockingQueue<>(requestBufferLength);
+			metrics = new RequestMetrics( () -> queue.size(), () -> rateLimiter.getRatePerSecond() );
+			
+			this.restSender = Objects.requireNonNull(restSender, strRestSender);
+		}
+		
+		/**
+		 * Constructs processor sending documents asynchronously - single worker keeps up to 'maxInFlight' requests
+		 * awaiting remote API responses, while rate limit is still applied to each send
+		 */
+		public RequestProcessor(Long requestLimit, TimeUnit timeUnit, int requestBufferLength, 
+				AsyncRestSender<T> asyncSender, int maxInFlight) {
+			super(requestLimit, timeUnit);
+			
+			String strBuffLen = "requestBufferLength", strAsyncSender = "asyncSender", strMaxInFlight = "maxInFlight";
+			
+			if(requestBufferLength < 1 || requestBufferLength > INT_MAX_BUFFER_LENGTH) throw new IllegalArgumentException(strBuffLen);
+			queue = new ArrayBlockingQueue<>(requestBufferLength);
+			metrics = new RequestMetrics( () -> queue.size(), () -> rateLimiter.getRatePerSecond() );
+			
+			if(maxInFlight < 1) throw new IllegalArgumentException(strMaxInFlight);
+			this.asyncSender	= Objects.requireNonNull(asyncSender, strAsyncSender);
+			this.restSender		= document -> asyncSender.apply(document).join();
+			this.maxInFlight	= maxInFlight;
+			this.inFlight		= new Semaphore(maxInFlight);
+		}
+		
+		/**
+		 * Replaces processor queue (ARRAY of constructor given length by default), must be called before processing is started.
+		 * Capacity is not limited by 10000 here - it is up to 2^30 elements.
+		 * @param strategy - queue kind
+		 * @param capacity - maximal queued documents count
+		 * @param waitStrategy - waiting strategy of RING queue, ignored by others
+		 */
+		public void setQueue(QueueStrategy strategy, int capacity, WaitStrategy waitStrategy) {
+			String strStrategy = "strategy", strCapacity = "capacity", strWaitStrategy = "waitStrategy";
+			
+			Objects.requireNonNull(strategy, strStrategy);
+			Objects.requireNonNull(waitStrategy, strWaitStrategy);
+			if(capacity < 1 || capacity > INT_MAX_QUEUE_CAPACITY) throw new IllegalArgumentException(strCapacity);
+			if( !queue.isEmpty() ) throw new IllegalStateException(STR_QUEUE_NOT_EMPTY);
+			
+			queue = strategy.newQueue(capacity, waitStrategy);
+		}
+		
+		/**
+		 * Replaces processor queue by given one (i.e. FairScheduler), must be called before processing is started
+		 * @param queue - empty documents queue
+		 */
+		public void setQueue(BlockingQueue<T> queue) {
+			String strQueue = "queue";
+			
+			Objects.requireNonNull(queue, strQueue);
+			if( !this.queue.isEmpty() || !queue.isEmpty() ) throw new IllegalStateException(STR_QUEUE_NOT_EMPTY);
+			
+			this.queue = queue;
+		}
+		
+		/**
+		 * Makes processor queue durable: each document is appended to journal before it is queued and acknowledged 
+		 * as soon as its outcome is final (created, given up or dropped). Documents journaled but not acknowledged before restart 
+		 * are sent by the first worker before it takes anything from the queue.
+		 * Must be called before processing is started.
+		 * @param journal - documents journal, null to turn journaling off
+		 */
+		public void setJournal(DocumentJournal<T> journal) {
+			this.journal = journal;
+		}
+		
+		public DocumentJournal<T> getJournal() {
+			return journal;
+		}
+		
+		/**
+		 * Turns deduplication of client documents on: document whose key is in process or was created within cache
+		 * time to live is not queued again, it shares result of the original one instead (see submit).
+		 * Failed document key is released at once, so it might be sent again. Retries and journal replays are not deduplicated.
+		 * Must be called before processing is started.
+		 * @param dedupCache - cache of documents results, null to turn deduplication off
+		 * @param dedupKey - document key, i.e. header id or LongDedupCache.keyOf(docId)
+		 */
+		public void setDeduplication(LongDedupCache<CompletableFuture<RequestResult>> dedupCache, ToLongFunction<T> dedupKey) {
+			String strDedupKey = "dedupKey";
+			if(dedupCache != null) Objects.requireNonNull(dedupKey, strDedupKey);
+			
+			this.dedupCache	= dedupCache;
+			this.dedupKey	= dedupKey;
+		}
+		
+		/**
+		 * Turns deduplication of client documents by header id on (see above)
+		 */
+		public void setDeduplication(LongDedupCache<CompletableFuture<RequestResult>> dedupCache) {
+			setDeduplication(dedupCache, document -> document.getId());
+		}
+		
+		/**
+		 * Sets overflow policy of non-blocking sending (trySend, send with timeout, sendAsync),
+		 * sendRequest still waits for room in queue as long as it takes
+		 * @param overflowPolicy - overflow policy, SPILL_TO_DISK requires journal (see setJournal)
+		 */
+		public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+			String strOverflowPolicy = "overflowPolicy";
+			Objects.requireNonNull(overflowPolicy, strOverflowPolicy);
+			if(overflowPolicy == OverflowPolicy.SPILL_TO_DISK && journal == null) throw new IllegalStateException(STR_NO_JOURNAL);
+			
+			this.overflowPolicy = overflowPolicy;
+		}
+		
+		public OverflowPolicy getOverflowPolicy() {
+			return overflowPolicy;
+		}
+		
+		/**
+		 * Turns retries on: failed document (by response status or exception) having retry policy is put into delay queue 
+		 * and sent again after backoff, fresh documents are sent meanwhile. Retries take permits of the same rate limiter.
+		 * @param retryPolicies - retry policies, null to turn retries off
+		 */
+		public void setRetryPolicies(RetryPolicies retryPolicies) {
+			this.retryPolicies = retryPolicies;
+		}
+		
+		/**
+		 * @param deadLetterSink - receiver of documents were not retried or retries were exhausted, null if there is no one
+		 */
+		public void setDeadLetterSink(DeadLetterSink<T> deadLetterSink) {
+			this.deadLetterSink = deadLetterSink;
+		}
+		
+		/**
+		 * Documents are checked against circuit breaker before rate limiter permit is taken for them, so open breaker
+		 * rejects them at once (retry policy parks them) and does not spend permits
+		 * @param circuitBreaker - breaker the sender is decorated by, null if there is no one
+		 */
+		public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+			this.circuitBreaker = circuitBreaker;
+		}
+		
+		/**
+		 * Sets quantity of worker threads draining the same queue. All workers share one rate limiter,
+		 * so requestLimit/timeUnit is honoured globally. Has to be called before workers are started.
+		 * @param workerCount - worker threads quantity
+		 */
+		public void setWorkerCount(int workerCount) {
+			String strWorkerCount = "workerCount";
+			if(workerCount < 1) throw new IllegalArgumentException(strWorkerCount);
+			
+			this.workerCount = workerCount;
+			activeWorkers.set(workerCount);
+		}
+		
+		public int getWorkerCount() {
+			return workerCount;
+		}
+		
+		/**
+		 * Sets executor sending each document as separate task (i.e. one virtual thread per in-flight document),
+		 * so worker thread does not wait for remote API responses. Has to be called before workers are started.
+		 * @param sendExecutor - documents sending executor, null to send documents by worker thread itself
+		 * @param maxInFlight - maximal quantity of documents being sent concurrently
+		 */
+		public void setSendExecutor(ExecutorService sendExecutor, int maxInFlight) {
+			String strMaxInFlight = "maxInFlight", strAsyncSender = "Send executor is useless for asynchronous sender";
+			if(sendExecutor != null && maxInFlight < 1) throw new IllegalArgumentException(strMaxInFlight);
+			if(asyncSender != null) throw new IllegalStateException(strAsyncSender);
+			
+			this.sendExecutor	= sendExecutor;
+			this.maxInFlight	= (sendExecutor != null) ? maxInFlight : 0;
+			this.inFlight		= (sendExecutor != null) ? new Semaphore(maxInFlight) : null;
+		}
+		
+		/**
+		 * Sets trace data rendering mode
+		 * @param traceMode - trace mode
+		 * @param sampleRate - N for SAMPLED mode (every N-th document is traced), ignored for other modes
+		 */
+		public void setTraceMode(TraceMode traceMode, int sampleRate) {
+			String strTraceMode = "traceMode", strSampleRate = "sampleRate";
+			
+			Objects.requireNonNull(traceMode, strTraceMode);
+			if(traceMode == TraceMode.SAMPLED && sampleRate < 1) throw new IllegalArgumentException(strSampleRate);
+			
+			this.traceMode			= traceMode;
+			this.traceSampleRate	= (traceMode == TraceMode.SAMPLED) ? sampleRate : 1;
+		}
+		
+		public TraceMode getTraceMode() {
+			return traceMode;
+		}
+		
+		/**
+		 * @return hot path metrics - might be polled via snapshot() or registered in JMX
+		 */
+		public RequestMetrics getMetrics() {
+			return metrics;
+		}
+		
+		protected static boolean isCreated(ResponseEntity<?> restResponse) {
+			return restResponse != null && restResponse.getStatusCode() == HttpStatus.CREATED;
+		}
+		
+		/**
+		 * Places trace data of successfully created document according trace mode
+		 * @param document - created document
+		 */
+		protected void trace(T document) throws JsonProcessingException {
+			switch(traceMode) {
+			case OFF:
+				document.setReservedB(null);
+				break;
+			case EAGER:
+				document.setReservedB( JsonCodec.toJson(document) );
+				break;
+			case SAMPLED:
+				// sampled document is traced lazily
+				if(traceCounter.getAndIncrement() % traceSampleRate == 0) traceLazily(document);
+				else document.setReservedB(null);
+				break;
+			case LAZY:
+				traceLazily(document);
+				break;
+			default:
+				assert false;
+			}
+		}
+		
+		protected void traceLazily(T document) {
+			document.setReservedBFactory( () -> {
+				try {
+					return JsonCodec.toJson(document);
+				}catch(JsonProcessingException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			});
+		}
+		
+		/**
+		 * Turns batching on: worker drains up to 'batchSize' queued documents or waits up to 'lingerMillis'
+		 * for them, whichever comes first, and hands the batch over to batch sender.
+		 * Batch sender makes one request of the whole batch, so it takes one rate limiter permit per batch.
+		 * Without batch sender documents of batch are sent sequentially, each one by its own permit.
+		 * Has to be called before workers are started.
+		 * @param batchSize - maximal documents quantity per batch, 1 turns batching off
+		 * @param lingerMillis - maximal time in milliseconds to wait for batch to be filled
+		 * @param batchSender - batch capable sender making one request (i.e. one multi-document payload) and returning 
+		 * one response per document in the same order, null to send batch documents one by one
+		 */
+		public void setBatching(int batchSize, long lingerMillis, Function<List<T>, List<ResponseEntity<?>>> batchSender) {
+			String strBatchSize = "batchSize", strLingerMillis = "lingerMillis";
+			if(batchSize < 1) throw new IllegalArgumentException(strBatchSize);
+			if(lingerMillis < 0) throw new IllegalArgumentException(strLingerMillis);
+			
+			this.batchSize			= batchSize;
+			this.batchLingerNanos	= TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+			this.batchSender		= batchSender;
+		}
+		
+		/**
+		 * Starts configured quantity of worker threads running this processor
+		 * @param threadName - thread name (for single worker) or thread name prefix (for multiple workers)
+		 * @return started worker threads
+		 */
+		public List<Thread> startWorkers(String threadName) {
+			String strThreadName = "threadName";
+			Objects.requireNonNull(threadName, strThreadName);
+			
+			List<Thread> result = new ArrayList<>(workerCount);
+			for(int i=0; i<workerCount; i++) {
+				var name = (workerCount == 1) ? threadName : String.format(STR_THREAD_WORKER, threadName, i + 1);
+				var thread = new Thread(this, name);
+				result.add(thread);
+				thread.start();
+			}
+			
+			return result;
+		}
+		
+		/**
+		 * Submits configured quantity of workers running this processor to executor
+		 * @param executor - workers executor (i.e. created via ExecutionMode.newExecutor())
+		 * @return workers futures
+		 */
+		public List<Future<?>> startWorkers(ExecutorService executor) {
+			String strExecutor = "executor";
+			Objects.requireNonNull(executor, strExecutor);
+			
+			List<Future<?>> result = new ArrayList<>(workerCount);
+			for(int i=0; i<workerCount; i++) result.add( executor.submit(this) );
+			
+			return result;
+		}
+		
+		/**
+		 * Client method to send document request onto remote API "Chestny Znak"
+		 * @param document - POJO class mapped to JSON document
+		 * @param certificate - authorization certificate for remote API
+		 * @return InterruptedException, returns in case of external interruption to maintain it in caller thread, null otherwise
+		 */
+		public InterruptedException sendRequest(T document, U certificate) {
+			if( isDuplicate(document) ) return null;
+			
+			try {
+				admit(document, certificate);
+				queue.put(document);
+				return null;
+			}catch(InterruptedException ex) {
+				release(document, ex);
+				return ex;
+			}catch(RuntimeException ex) {
+				release(document, ex);
+				throw ex;
+			}
+		}
+		
+		/**
+		 * Non-blocking client method - document is queued if there is room, otherwise overflow policy is applied
+		 * @param document - POJO class mapped to JSON document
+		 * @param certificate - authorization certificate for remote API
+		 * @return true if document was accepted (queued or spilled), false if it was rejected
+		 */
+		public boolean trySend(T document, U certificate) {
+			try {
+				return send(document, certificate, 0L, TimeUnit.NANOSECONDS);
+			}catch(InterruptedException ex) {
+				// journal group commit was interrupted - keep interruption for caller
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		
+		/**
+		 * Client method waiting for room in queue up to timeout, overflow policy is applied after it
+		 * @param document - POJO class mapped to JSON document
+		 * @param certificate - authorization certificate for remote API
+		 * @param timeout - the longest waiting time, 0 - no waiting
+		 * @param unit - timeout time unit
+		 * @return true if document was accepted (queued, spilled or coalesced with duplicate), false if it was rejected
+		 */
+		public boolean send(T document, U certificate, long timeout, TimeUnit unit) throws InterruptedException {
+			String strUnit = "unit";
+			Objects.requireNonNull(unit, strUnit);
+			
+			if( isDuplicate(document) ) return true;
+			
+			try {
+				return enqueue(document, certificate, timeout, unit);
+			}catch(InterruptedException | RuntimeException ex) {
+				release(document, ex);
+				throw ex;
+			}
+		}
+		
+		/**
+		 * Queues document waiting for room up to timeout, applies overflow policy after it
+		 */
+		protected boolean enqueue(T document, U certificate, long timeout, TimeUnit unit) throws InterruptedException {
+			admit(document, certificate);
+			
+			if( document.getControlCommand() != MsgCommand.POISON_PILL ) {
+				// keep FIFO order - while there are spilled documents the next ones are spilled as well
+				if( overflowPolicy == OverflowPolicy.SPILL_TO_DISK && journal.hasSpilled() ) {
+					spill(document);
+					return true;
+				}
+			}
+			
+			boolean queued = (timeout > 0) ? queue.offer(document, timeout, unit) : queue.offer(document);
+			return queued || onOverflow(document);
+		}
+		
+		/**
+		 * Asynchronous client method - document is accepted as trySend() does it
+		 * @param document - POJO class mapped to JSON document, its id has to be unique among documents in process
+		 * @param certificate - authorization certificate for remote API
+		 * @return future of remote API response to the document (created or not), completed exceptionally
+		 * by the last sending exception or RejectedExecutionException if document was rejected or dropped
+		 */
+		public CompletableFuture<ResponseEntity<?>> sendAsync(T document, U certificate) {
+			return submit(document, certificate).thenCompose( result -> (result.getError() != null) ?
+					CompletableFuture.<ResponseEntity<?>>failedFuture( result.getError() ) : 
+					CompletableFuture.<ResponseEntity<?>>completedFuture( result.getResponse() ) );
+		}
+		
+		/**
+		 * Asynchronous client method returning document handle - document is accepted as trySend() does it
+		 * @param document - POJO class mapped to JSON document, its id has to be unique among documents in process
+		 * @param certificate - authorization certificate for remote API
+		 * @return future of document final result, it is never completed exceptionally - errors are results as well.
+		 * Duplicate document (see setDeduplication) gets future of the original one.
+		 */
+		public CompletableFuture<RequestResult> submit(T document, U certificate) {
+			String strDocument = "document";
+			Objects.requireNonNull(document, strDocument);
+			if(document.getControlCommand() == MsgCommand.POISON_PILL) throw new IllegalArgumentException(strDocument);
+			
+			var result = new CompletableFuture<RequestResult>();
+			var original = register(document, result);
+			if(original != null) return original;
+			
+			try {
+				// rejected document future is completed already
+				enqueue(document, certificate, 0L, TimeUnit.NANOSECONDS);
+			}catch(InterruptedException ex) {
+				// journal group commit was interrupted - keep interruption for caller
+				Thread.currentThread().interrupt();
+				complete(document, null, ex);
+			}catch(RuntimeException ex) {
+				complete(document, null, ex);
+			}
+			return result;
+		}
+		
+		/**
+		 * Looks submitted document up by id
+		 * @param id - document header id
+		 * @return future of document final result, null if there is no such document in process
+		 */
+		public CompletableFuture<RequestResult> getResult(Long id) {
+			return completions.get(id);
+		}
+		
+		/**
+		 * @return quantity of submitted documents in process
+		 */
+		public int getPendingResults() {
+			return completions.size();
+		}
+		
+		/**
+		 * Registers future of document result, coalesces document with its duplicate when deduplication is on
+		 * @return future of duplicate in process or created recently, null if document future was registered
+		 */
+		protected CompletableFuture<RequestResult> register(T document, CompletableFuture<RequestResult> future) {
+			long key = 0L;
+			
+			if(dedupCache != null) {
+				key = dedupKey.applyAsLong(document);
+				
+				CompletableFuture<RequestResult> original = dedupCache.putIfAbsent(key, future);
+				if(original != null) {
+					metrics.onDeduplicated(document);
+					return original;
+				}
+			}
+			
+			if( completions.putIfAbsent(document.getId(), future) != null ) {
+				if(dedupCache != null) dedupCache.remove(key, future);
+				throw new IllegalStateException( String.format(STR_DUPLICATE_ID, document.getId()) );
+			}
+			return null;
+		}
+		
+		/**
+		 * Checks client document is duplicate to be skipped, registers its result future otherwise
+		 */
+		protected boolean isDuplicate(T document) {
+			String strDocument = "document";
+			Objects.requireNonNull(document, strDocument);
+			
+			if( dedupCache == null || document.getControlCommand() == MsgCommand.POISON_PILL ) return false;
+			return register( document, new CompletableFuture<>() ) != null;
+		}
+		
+		/**
+		 * Releases registration of document was not accepted by failure, so its duplicate is not coalesced with it
+		 */
+		protected void release(T document, Throwable error) {
+			if(document.getControlCommand() != MsgCommand.POISON_PILL) complete(document, null, error);
+		}
+		
+		/**
+		 * Prepares document for queueing: certificate, journal record, metrics
+		 */
+		protected void admit(T document, U certificate) throws InterruptedException {
+			String strDocument = "document";
+			Objects.requireNonNull(document, strDocument);
+			
+			if(certificate != null) document.setReservedA( certificate.toString() );
+			else document.setReservedA( null );
+			
+			// control messages (i.e. poison pill) are neither measured nor journaled
+			if(document.getControlCommand() == MsgCommand.POISON_PILL) return;
+			
+			if(journal != null) {
+				try {
+					journal.append(document);
+				}catch(InterruptedIOException ex) {
+					var result = new InterruptedException( ex.getMessage() );
+					result.initCause(ex);
+					throw result;
+				}catch(IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			}
+			metrics.onEnqueued(document);
+		}
+		
+		/**
+		 * Applies overflow policy to document did not fit the queue
+		 * @return true if document was accepted anyway, false if it was rejected
+		 */
+		protected boolean onOverflow(T document) {
+			if( document.getControlCommand() == MsgCommand.POISON_PILL ) return false;
+			
+			switch(overflowPolicy) {
+			case REJECT:
+				break;
+			case DROP_OLDEST:
+				while(true) {
+					T oldest = queue.poll();
+					
+					// terminal message is never dropped - there is nothing to drop before it
+					if(oldest != null && oldest.getControlCommand() == MsgCommand.POISON_PILL) {
+						control.set(oldest);
+						break;
+					}
+					if(oldest != null) {
+						metrics.onDropped(oldest);
+						drop(oldest, STR_DOCUMENT_DROPPED);
+					}
+					if( queue.offer(document) ) return true;
+				}
+				break;
+			case SPILL_TO_DISK:
+				spill(document);
+				return true;
+			default:
+				assert false;
+			}
+			
+			metrics.onRejected(document);
+			drop(document, STR_DOCUMENT_REJECTED);
+			return false;
+		}
+		
+		/**
+		 * Gives document up without sending - it is neither replayed nor retried
+		 * @param document - message (document)
+		 * @param reason - reason message format
+		 */
+		protected void drop(T document, String reason) {
+			String message = String.format( reason, document.getId() );
+			
+			if(journal != null) journal.acknowledge(document);
+			complete( document, null, new RejectedExecutionException(message) );
+			
+			// report client about document was not sent
+			document.setReservedB(message);
+			triggerEvent(document, null);
+		}
+		
+		/**
+		 * Keeps document in journal only - workers read it back when the queue is drained
+		 */
+		protected void spill(T document) {
+			journal.markSpilled(document);
+			metrics.onSpilled(document);
+		}
+		
+		/**
+		 * Reports error and completes document future exceptionally - document is not sent by this processor anymore.
+		 * Its journal record is not acknowledged, so it is replayed after restart.
+		 */
+		@Override
+		protected void onError(T data, Throwable ex) {
+			super.onError(data, ex);
+			
+			if( data != null && data.getControlCommand() != MsgCommand.POISON_PILL ) complete(data, null, ex);
+		}
+		
+		/**
+		 * Completes document future (if there is one) by its final result
+		 * @param document - message (document)
+		 * @param restResponse - remote API response, null if document was failed by exception
+		 * @param error - exception, null if remote API responded
+		 */
+		protected void complete(T document, ResponseEntity<?> restResponse, Throwable error) {
+			if( completions.isEmpty() ) return;
+			
+			CompletableFuture<RequestResult> future = completions.remove( document.getId() );
+			if(future == null) return;
+			
+			var result = new RequestResult(document, restResponse, error);
+			if(dedupCache != null) {
+				// created document stays duplicate for the whole time to live, failed one might be sent again
+				long key = dedupKey.applyAsLong(document);
+				if( result.isCreated() ) dedupCache.refresh(key, future);
+				else dedupCache.remove(key, future);
+			}
+			future.complete(result);
+		}
+
+		/**
+		 * Sends document onto remote API, prepares trace data and reports client about document was processed
+		 * @param document - message (document) to send
+		 */
+		protected void process(T document) throws Exception {
+			long sendStart = metrics.onSendStarted(document);
+			ResponseEntity<?> restResponse;
+			
+			try {
+				// send user message (requested document) via HTTPS to remote API
+				restResponse = restSender.apply(document);
+			}catch(RuntimeException ex) {
+				// send failure affects current document only - worker goes on
+				metrics.onSendError(document);
+				feedback(null, ex, sendStart);
+				onFailure(document, null, ex);
+				return;
+			}catch(Throwable ex) {
+				metrics.onSendError(document);
+				throw ex;
+			}
+			
+			metrics.onSendCompleted( document, sendStart, isCreated(restResponse) );
+			feedback(restResponse, null, sendStart);
+			onResponse(document, restResponse);
+		}
+		
+		/**
+		 * Reports request result to rate limiter - adaptive one corrects rate by it
+		 * @param restResponse - remote API response, null if sending was failed by exception
+		 * @param error - sending exception, null if remote API responded
+		 * @param sendStart - sending start time (System.nanoTime)
+		 */
+		protected void feedback(ResponseEntity<?> restResponse, Throwable error, long sendStart) {
+			rateLimiter.onResult( restResponse, error, System.nanoTime() - sendStart );
+		}
+		
+		/**
+		 * Prepares trace data by remote API response and reports client about document was processed
+		 * @param document - message (document) was sent
+		 * @param restResponse - remote API response
+		 */
+		protected void onResponse(T document, ResponseEntity<?> restResponse) throws Exception {
+			assert restResponse != null;
+			
+			// suppose, HttpStatus.CREATED is OK (no error) answer
+			if( isCreated(restResponse) ) {
+				// request was processed (created) by remote API successfully
+				// it is not replayed after restart anymore
+				if(journal != null) journal.acknowledge(document);
+				
+				// convert current document to JSON for trace & debug purposes (according trace mode)
+				trace(document);
+				document.setAttempt( document.getAttempt() + 1 );
+				complete(document, restResponse, null);
+			} else {
+				// request was processed (not created) by remote API with some errors - retry or give up
+				onFailure(document, restResponse, null);
+				return;
+			}
+			
+			// trigger event to report client about current document was processed
+			triggerEvent(document, null);
+		}
+		
+		/**
+		 * Schedules failed document retry according its policy or gives it up: reports client about error
+		 * and hands document over to dead letter sink
+		 * @param document - message (document) was sent
+		 * @param restResponse - remote API response, null if sending was failed by exception
+		 * @param error - sending exception, null if remote API responded
+		 */
+		protected void onFailure(T document, ResponseEntity<?> restResponse, Throwable error) {
+			assert restResponse != null || error != null;
+			
+			document.setAttempt( document.getAttempt() + 1 );
+			
+			RetryPolicy policy = null;
+			if(retryPolicies != null) 
+				policy = (error != null) ? retryPolicies.forException(error) : retryPolicies.forStatus( restResponse.getStatusCodeValue() );
+			
+			if( policy != null && policy.canRetry(document.getAttempt()) ) {
+				metrics.onRetry(document);
+				retries.put( new DelayedRetry<>(document, policy.backoffNanos(document.getAttempt())) );
+				return;
+			}
+			
+			// inform client about error
+			if(error != null) {
+				document.setReservedB( String.format(STR_SEND_ERROR, document.getId(), error) );
+				logError(error);
+			} else {
+				// STR_REQUEST_ERROR = "Request (id=%s) processed with next error '%s'!";
+				document.setReservedB( String.format( STR_REQUEST_ERROR, document.getId(), 
+						restResponse.getStatusCode().value() + ", " + restResponse.getStatusCode().name(),
+						HttpStatus.CREATED.value() + ", " + HttpStatus.CREATED.name() ) );
+			}
+			
+			if(deadLetterSink != null) {
+				metrics.onDeadLetter(document);
+				deadLetterSink.accept(document, restResponse, error);
+			}
+			
+			// document is given up (or owned by dead letter sink) - it is not replayed after restart
+			if(journal != null) journal.acknowledge(document);
+			complete(document, restResponse, error);
+			
+			// trigger event to report client about current document was processed
+			triggerEvent(document, null);
+		}
+		
+		/**
+		 * Fails document at once if circuit breaker would reject it - no rate limiter permit is spent on it
+		 * @return true if document might be sent
+		 */
+		protected boolean isCallPermitted(T document) {
+			if( circuitBreaker == null || circuitBreaker.isCallPermitted() ) return true;
+			
+			onFailure( document, null, circuitBreaker.reject() );
+			return false;
+		}
+		
+		/**
+		 * Waits for rate limiter permit and dispatches document, unless circuit breaker rejects it
+		 * @param document - message (document) to send
+		 */
+		protected void acquireAndDispatch(T document) throws Exception {
+			if( !isCallPermitted(document) ) return;
+			
+			metrics.onRateLimitStall( rateLimiter.acquire() );
+			dispatch(document);
+		}
+		
+		/**
+		 * Processes document in current worker thread or hands it over to send executor (one task per document)
+		 * @param document - message (document) to send
+		 */
+		protected void dispatch(T document) throws Exception {
+			if(asyncSender != null) {
+				dispatchAsync(document);
+				return;
+			}
+			
+			if(sendExecutor == null) {
+				process(document);
+				return;
+			}
+			
+			// bound quantity of documents being sent concurrently
+			inFlight.acquire();
+			try {
+				sendExecutor.execute(() -> {
+					try {
+						process(document);
+					}catch(Throwable ex) {
+						// send task failure affects its document only, worker keeps draining the queue
+						onError(document, ex);
+					}finally {
+						inFlight.release();
+					}
+				});
+			}catch(RejectedExecutionException ex) {
+				inFlight.release();
+				throw ex;
+			}
+		}
+		
+		/**
+		 * Sends document via asynchronous sender, response is handled by the thread completing the future
+		 * @param document - message (document) to send
+		 */
+		protected void dispatchAsync(T document) throws InterruptedException {
+			// bound quantity of requests awaiting remote API response
+			inFlight.acquire();
+			
+			long sendStart = metrics.onSendStarted(document);
+			CompletableFuture<ResponseEntity<?>> response;
+			try {
+				response = asyncSender.apply(document);
+			}catch(RuntimeException ex) {
+				inFlight.release();
+				metrics.onSendError(document);
+				feedback(null, ex, sendStart);
+				onFailure(document, null, ex);
+				return;
+			}catch(Throwable ex) {
+				inFlight.release();
+				metrics.onSendError(document);
+				onError(document, ex);
+				return;
+			}
+			
+			response.whenComplete( (restResponse, ex) -> {
+				try {
+					if(ex != null) {
+						Throwable error = (ex instanceof CompletionException && ex.getCause() != null) ? ex.getCause() : ex;
+						metrics.onSendError(document);
+						feedback(null, error, sendStart);
+						onFailure(document, null, error);
+					} else {
+						metrics.onSendCompleted( document, sendStart, isCreated(restResponse) );
+						feedback(restResponse, null, sendStart);
+						onResponse(document, restResponse);
+					}
+				}catch(Throwable exx) {
+					onError(document, exx);
+				}finally {
+					inFlight.release();
+				}
+			});
+		}
+		
+		/**
+		 * Fills batch up with queued documents until it is full, linger time is over or poison pill is met
+		 * @param batch - batch already containing first document
+		 * @return poison pill if it was met, null otherwise
+		 */
+		protected T fillBatch(List<T> batch) throws InterruptedException {
+			long deadline = System.nanoTime() + batchLingerNanos;
+			
+			while(batch.size() < batchSize) {
+				// take everything already queued without waiting
+				T next = queue.poll();
+				if(next == null) {
+					long remaining = deadline - System.nanoTime();
+					if(remaining <= 0) break;
+					
+					next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+					if(next == null) break;
+				}
+				
+				if( next.getControlCommand() == MsgCommand.POISON_PILL ) return next;
+				batch.add(next);
+			}
+			
+			return null;
+		}
+		
+		/**
+		 * Sends batch via batch sender (one request) and reports client about each document result. 
+		 * Request duration is recorded and fed back to rate limiter once per batch.
+		 * @param batch - documents to send
+		 */
+		protected void processBatch(List<T> batch) throws Exception {
+			long sendStart = 0L;
+			for(T document : batch) sendStart = metrics.onSendStarted(document);
+			
+			List<ResponseEntity<?>> responses;
+			try {
+				responses = batchSender.apply(batch);
+				
+				if(responses == null || responses.size() != batch.size())
+					throw new IllegalStateException( String.format(STR_BATCH_RESPONSES, (responses != null) ? responses.size() : null, batch.size()) );
+			}catch(RuntimeException ex) {
+				// batch failure affects its documents only - each one is retried or given up on its own
+				feedback(null, ex, sendStart);
+				for(T document : batch) {
+					metrics.onSendError(document);
+					onFailure(document, null, ex);
+				}
+				return;
+			}catch(Throwable ex) {
+				for(T document : batch) metrics.onSendError(document);
+				throw ex;
+			}
+			
+			// the first failed response (if any) tells rate limiter about remote API state
+			ResponseEntity<?> worst = responses.get(0);
+			for(ResponseEntity<?> response : responses) {
+				if( !isCreated(response) ) {
+					worst = response;
+					break;
+				}
+			}
+			feedback(worst, null, sendStart);
+			
+			for(int i=0; i<batch.size(); i++) {
+				metrics.onSendCompleted( batch.get(i), sendStart, isCreated(responses.get(i)), i == 0 );
+				onResponse( batch.get(i), responses.get(i) );
+			}
+		}
+		
+		/**
+		 * Processes batch in current worker thread or hands it over to send executor as one task
+		 * @param batch - documents to send
+		 */
+		protected void dispatchBatch(List<T> batch) throws Exception {
+			if(sendExecutor == null) {
+				processBatch(batch);
+				return;
+			}
+			
+			inFlight.acquire();
+			try {
+				sendExecutor.execute(() -> {
+					try {
+						processBatch(batch);
+					}catch(Throwable ex) {
+						for(T document : batch) onError(document, ex);
+					}finally {
+						inFlight.release();
+					}
+				});
+			}catch(RejectedExecutionException ex) {
+				inFlight.release();
+				throw ex;
+			}
+		}
+		
+		/**
+		 * Takes the next document to send: retry which is due or fresh document from the queue
+		 */
+		protected T takeNext() throws InterruptedException {
+			// spilled documents are newer than queued ones - they are read back as soon as the queue is drained
+			if( journal != null && journal.hasSpilled() ) {
+				T document = queue.poll();
+				if(document != null && document.getControlCommand() != MsgCommand.POISON_PILL) return document;
+				
+				T spilled = journal.pollSpilled();
+				if(document != null) {
+					// terminal message goes after spilled documents - it waits aside, the queue might be full again
+					if(spilled == null) return document;
+					control.set(document);
+				}
+				if(spilled != null) return spilled;
+			}
+			
+			while(true) {
+				if(retryPolicies != null) {
+					DelayedRetry<T> retry = retries.poll();
+					if(retry != null) return retry.document;
+				}
+				
+				T pill = control.getAndSet(null);
+				if(pill != null) return pill;
+				
+				// wait for fresh document until the nearest retry is due, retries might be scheduled 
+				// and terminal message might be put aside by other threads meanwhile
+				DelayedRetry<T> nearest = retries.peek();
+				long waitNanos = (nearest != null) ? 
+						Math.max( 0L, Math.min(nearest.getDelay(TimeUnit.NANOSECONDS), LONG_RETRY_POLL_NANOS) ) : LONG_RETRY_POLL_NANOS;
+				
+				T document = queue.poll(waitNanos, TimeUnit.NANOSECONDS);
+				if(document != null) return document;
+			}
 		}
 		
-		public URI getDocumentCreationUri() throws URISyntaxException {
-			return new URI(baseUri.getScheme(), null, baseUri.getHost(), 
-					baseUri.getPort(), baseUri.getPath() + "/" + documentSuffix + "/" + createAction, 
-					baseQuery, null);
+		/**
+		 * Takes the next document only in case it might be sent at once: there is due retry or fresh document
+		 * (replayed, held back, queued or spilled one) and rate limiter grants permit without waiting 
+		 * (used by shared workers of MultiTenantProcessor)
+		 * @return document to send, null if there is nothing to send right now
+		 */
+		protected T pollReady() {
+			if(retryPolicies != null) {
+				DelayedRetry<T> retry = retries.poll();
+				if(retry != null) {
+					if( !isCallPermitted(retry.document) ) return null;
+					if( rateLimiter.tryAcquire() ) return retry.document;
+					
+					// it is due still - the next attempt gets it
+					retries.put(retry);
+					return null;
+				}
+			}
+			
+			// the first call replays documents were journaled but not delivered before restart
+			if( journal != null && journalReplayed.compareAndSet(false, true) ) heldBack.addAll( journal.recover() );
+			
+			// document is taken first - permit is never spent on document taken by somebody else
+			T document = heldBack.pollFirst();
+			if(document == null) document = queue.poll();
+			if(document == null && journal != null) document = journal.pollSpilled();
+			if(document == null) return null;
+			
+			if( document.getControlCommand() != MsgCommand.POISON_PILL ) {
+				if( !isCallPermitted(document) ) return null;
+				if( rateLimiter.tryAcquire() ) return document;
+			}
+			
+			// it goes ahead of the queue still - the next attempt gets it
+			heldBack.addFirst(document);
+			return null;
+		}
+		
+		/**
+		 * @return true if there are neither queued documents, nor retries, nor documents in flight
+		 */
+		protected boolean isDrained() {
+			return queue.isEmpty() && retries.isEmpty() && control.get() == null && heldBack.isEmpty() 
+					&& (journal == null || !journal.hasSpilled() && journalReplayed.get()) && isIdle();
+		}
+		
+		/**
+		 * @return true if there are no documents handed over to send executor (or asynchronous sender)
+		 */
+		protected boolean isIdle() {
+			return inFlight == null || inFlight.availablePermits() == maxInFlight;
+		}
+		
+		/**
+		 * Sends spilled documents left and scheduled retries until there are neither retries nor documents in flight 
+		 * which might schedule new ones, so poison pill completes processing after all retries are over
+		 */
+		protected void drainRetries() throws Exception {
+			// spilled documents might be left behind terminal message taken by batch
+			if(journal != null) {
+				for(T spilled = journal.pollSpilled(); spilled != null; spilled = journal.pollSpilled()) acquireAndDispatch(spilled);
+			}
+			
+			if(retryPolicies == null) return;
+			
+			while(true) {
+				DelayedRetry<T> retry = retries.poll(LONG_RETRY_POLL_NANOS, TimeUnit.NANOSECONDS);
+				
+				if(retry != null) acquireAndDispatch(retry.document);
+				else if( retries.isEmpty() && isIdle() ) return;
+			}
+		}
+		
+		/**
+		 * Passes the poison pill on to the rest of workers still draining the queue
+		 * @param poisonPill - terminal message
+		 */
+		protected void passPoisonPill(T poisonPill) {
+			// it never waits for room - full queue gets it aside
+			if( activeWorkers.decrementAndGet() > 0 && !queue.offer(poisonPill) ) control.set(poisonPill);
+		}
+		
+		/**
+		 * Waits for all documents handed over to send executor (or asynchronous sender) are processed
+		 */
+		protected void awaitInFlight() throws InterruptedException {
+			if(inFlight == null) return;
+			
+			inFlight.acquire(maxInFlight);
+			inFlight.release(maxInFlight);
+		}
+		
+		@Override
+		public void run() {
+			T newDoc = null;
+			// terminal message taken by this worker, it has to be passed on whatever happens next
+			T poisonPill = null;
+			boolean pillPassed = false;
+			
+			try {
+				// trigger event to report client about successfully thread starting
+				triggerEvent(MsgCommand.STARTED);
+				
+				// the first worker replays documents were journaled but not delivered before restart
+				if( journal != null && journalReplayed.compareAndSet(false, true) ) {
+					for(T document : journal.recover()) {
+						newDoc = document;
+						acquireAndDispatch(newDoc);
+					}
+					newDoc = null;
+				}
+				
+				while(true) {
+					newDoc = takeNext();
+					assert newDoc != null;
+					
+					// in case document is terminal "last wagon"-command (i.e. "poison pill")
+					if( newDoc.getControlCommand() == MsgCommand.POISON_PILL ) {
+						poisonPill = newDoc;
+						drainRetries();
+						passPoisonPill(poisonPill);
+						pillPassed = true;
+						
+						// it's over - successfully completing all our tasks
+						break;
+					}
+					
+					if(batchSize > 1) {
+						List<T> batch = new ArrayList<>(batchSize);
+						batch.add(newDoc);
+						poisonPill = fillBatch(batch);
+						
+						if(batchSender != null && asyncSender == null) {
+							// the whole batch is one request - one permit
+							batch.removeIf( document -> !isCallPermitted(document) );
+							if( !batch.isEmpty() ) {
+								metrics.onRateLimitStall( rateLimiter.acquire() );
+								dispatchBatch(batch);
+							}
+						}else {
+							// sequential sends - permit is taken right before each document, so batch makes no burst
+							for(T document : batch) acquireAndDispatch(document);
+						}
+						
+						if(poisonPill != null) {
+							newDoc = poisonPill;
+							drainRetries();
+							passPoisonPill(poisonPill);
+							pillPassed = true;
+							break;
+						}
+						continue;
+					}
+					
+					// wait for permit to fulfill requested frequency - time spent on previous HTTP calls is already counted
+					acquireAndDispatch(newDoc);
+				}
+				
+				// documents sent by executor have to be processed before completion is reported
+				awaitInFlight();
+				
+				// trigger event to report client about successfully thread completion
+				triggerEvent(newDoc, null);
+			}catch(Throwable ex) {
+				// worker is gone - the last of others has not to wait for it passing the pill on,
+				// terminal message it has taken (i.e. by batch) is passed on anyway
+				if(poisonPill == null) activeWorkers.decrementAndGet();
+				else if(!pillPassed) passPoisonPill(poisonPill);
+				
+				onError(newDoc, ex);
+			}
+		}
+	}
+	
+	/**
+	 * Multiplexing processor sending documents on behalf of many participants: documents are routed by certificate
+	 * into lanes, each lane is RequestProcessor with its own queue, rate limiter (participant API quota),
+	 * connection pool and metrics, but with no threads of its own. Shared workers serve lanes in round robin
+	 * and send document taken from lane only when lane rate limiter grants permit at once (it is held back
+	 * ahead of lane queue otherwise), so lane being over its quota never holds workers others might use.
+	 * Processor own rate limit is the global budget over all lanes. Lanes send documents one by one (lane batching
+	 * is not used), retries, deduplication, results, journal replay and spilled documents are lane ones.
+	 *
+	 * @param <T> - message (document) type
+	 * @param <U> - security key objects with toString() method defined
+	 */
+	public static class MultiTenantProcessor<T extends Header, U> extends Request<T> implements AutoCloseable {
+		protected static final String STR_THREAD_WORKER		= "%s-%d";
+		protected static final String STR_UNKNOWN_TENANT	= "There is no lane of certificate '%s'";
+		protected static final String STR_TENANT_EXISTS	= "Lane of certificate '%s' is added already";
+		
+		protected final int										laneBufferLength;
+		protected final ConcurrentMap<String, RequestProcessor<T, U>> lanes	= new ConcurrentHashMap<>();
+		// lanes in order they are served, workers pick up lanes added on the fly
+		protected final List<RequestProcessor<T, U>>			order			= new CopyOnWriteArrayList<>();
+		protected final List<HttpConnectionPool>				pools			= new CopyOnWriteArrayList<>();
+		protected final AtomicInteger							cursor			= new AtomicInteger();
+		protected final AtomicReference<T>						poisonPill		= new AtomicReference<>();
+		protected int											workerCount		= 1;
+		protected WaitStrategy									waitStrategy	= WaitStrategy.PARK;
+		protected AuthTokenProvider								authTokenProvider = null;
+		
+		/**
+		 * @param requestLimit - global requests quantity per time unit over all lanes
+		 * @param timeUnit - time unit
+		 * @param laneBufferLength - queue length of each lane
+		 */
+		public MultiTenantProcessor(Long requestLimit, TimeUnit timeUnit, int laneBufferLength) {
+			super(requestLimit, timeUnit);
+			
+			String strBuffLen = "laneBufferLength";
+			if(laneBufferLength < 1 || laneBufferLength > RequestProcessor.INT_MAX_BUFFER_LENGTH) 
+				throw new IllegalArgumentException(strBuffLen);
+			this.laneBufferLength = laneBufferLength;
+		}
+		
+		protected static String keyOf(Object certificate) {
+			String strCertificate = "certificate";
+			return Objects.requireNonNull(certificate, strCertificate).toString();
+		}
+		
+		/**
+		 * Adds participant lane sending documents by given sender, lane might be added while processing is running
+		 * @param certificate - participant certificate
+		 * @param requestLimit - participant requests quantity per time unit (API quota)
+		 * @param timeUnit - time unit
+		 * @param restSender - participant documents sender
+		 * @return lane processor (i.e. to set retry policies or replace rate limiter)
+		 */
+		public RequestProcessor<T, U> addTenant(U certificate, Long requestLimit, TimeUnit timeUnit, 
+				Function<T, ResponseEntity<?>> restSender) {
+			String key = keyOf(certificate);
+			
+			var lane = new RequestProcessor<T, U>(requestLimit, timeUnit, laneBufferLength, restSender);
+			lane.setActionHandler(actionHandler, messageFactory);
+			lane.setEventBus(eventBus);
+			
+			if( lanes.putIfAbsent(key, lane) != null ) throw new IllegalStateException( String.format(STR_TENANT_EXISTS, key) );
+			order.add(lane);
+			
+			return lane;
+		}
+		
+		/**
+		 * Adds participant lane posting documents as JSON via its own connection pool
+		 * @param certificate - participant certificate
+		 * @param requestLimit - participant requests quantity per time unit (API quota)
+		 * @param timeUnit - time unit
+		 * @param metadata - participant connection pool settings
+		 * @param uri - documents creation URI
+		 * @return lane processor
+		 */
+		public RequestProcessor<T, U> addTenant(U certificate, Long requestLimit, TimeUnit timeUnit, 
+				RestTemplateMetadata metadata, URI uri) throws Exception {
+			String strUri = "uri";
+			Objects.requireNonNull(uri, strUri);
+			
+			var pool = RestTemplateFactory.createConnectionPool(metadata);
+			var restTemplate = pool.getRestTemplate();
+			
+			try {
+				var lane = addTenant(certificate, requestLimit, timeUnit, document -> {
+					var headers = new HttpHeaders();
+					headers.setContentType(MediaType.APPLICATION_JSON);
+					if(authTokenProvider != null) authTokenProvider.authorize( headers, keyOf(certificate) );
+					
+					try {
+						return restTemplate.postForEntity( uri, new HttpEntity<>(JsonCodec.toBytes(document), headers), String.class );
+					}catch(JsonProcessingException ex) {
+						throw new IllegalArgumentException(ex);
+					}
+				});
+				pools.add(pool);
+				return lane;
+			}catch(RuntimeException ex) {
+				pool.close();
+				throw ex;
+			}
+		}
+		
+		/**
+		 * Makes lanes added via connection pool settings send documents with 'Authorization' header 
+		 * by token of lane certificate
+		 * @param authTokenProvider - tokens provider, null - no header
+		 */
+		public void setAuthTokenProvider(AuthTokenProvider authTokenProvider) {
+			this.authTokenProvider = authTokenProvider;
+		}
+		
+		/**
+		 * @return lane of certificate, null if there is no one
+		 */
+		public RequestProcessor<T, U> getLane(U certificate) {
+			return lanes.get( keyOf(certificate) );
+		}
+		
+		/**
+		 * @return lanes by certificates
+		 */
+		public Map<String, RequestProcessor<T, U>> getLanes() {
+			return Collections.unmodifiableMap(lanes);
+		}
+		
+		@Override
+		public void setActionHandler(Consumer<T> actionHandler, Supplier<T> messageFactory) {
+			super.setActionHandler(actionHandler, messageFactory);
+			for(var lane : order) lane.setActionHandler(actionHandler, messageFactory);
+		}
+		
+		@Override
+		public void setEventBus(EventBus<T> eventBus) {
+			super.setEventBus(eventBus);
+			for(var lane : order) lane.setEventBus(eventBus);
+		}
+		
+		/**
+		 * Sets quantity of worker threads shared by all lanes. Has to be called before workers are started.
+		 * @param workerCount - worker threads quantity
+		 */
+		public void setWorkerCount(int workerCount) {
+			String strWorkerCount = "workerCount";
+			if(workerCount < 1) throw new IllegalArgumentException(strWorkerCount);
+			
+			this.workerCount = workerCount;
+		}
+		
+		public int getWorkerCount() {
+			return workerCount;
+		}
+		
+		/**
+		 * @param waitStrategy - how idle worker waits for lane document or permit
+		 */
+		public void setWaitStrategy(WaitStrategy waitStrategy) {
+			String strWaitStrategy = "waitStrategy";
+			this.waitStrategy = Objects.requireNonNull(waitStrategy, strWaitStrategy);
+		}
+		
+		/**
+		 * Client method routing document into lane of certificate. Terminal message (poison pill) is not routed:
+		 * workers complete as soon as all lanes are drained.
+		 * @param document - POJO class mapped to JSON document
+		 * @param certificate - participant certificate, its lane has to be added already
+		 * @return InterruptedException, returns in case of external interruption to maintain it in caller thread, null otherwise
+		 */
+		public InterruptedException sendRequest(T document, U certificate) {
+			String strDocument = "document";
+			Objects.requireNonNull(document, strDocument);
+			
+			if(document.getControlCommand() == MsgCommand.POISON_PILL) {
+				poisonPill.compareAndSet(null, document);
+				return null;
+			}
+			return laneOf(certificate).sendRequest(document, certificate);
+		}
+		
+		/**
+		 * Non-blocking client method - document is accepted by lane of certificate as its trySend() does it
+		 */
+		public boolean trySend(T document, U certificate) {
+			return laneOf(certificate).trySend(document, certificate);
+		}
+		
+		/**
+		 * Asynchronous client method - document is accepted by lane of certificate as its submit() does it
+		 */
+		public CompletableFuture<RequestResult> submit(T document, U certificate) {
+			return laneOf(certificate).submit(document, certificate);
+		}
+		
+		protected RequestProcessor<T, U> laneOf(U certificate) {
+			String key = keyOf(certificate);
+			
+			var lane = lanes.get(key);
+			if(lane == null) throw new IllegalArgumentException( String.format(STR_UNKNOWN_TENANT, key) );
+			return lane;
+		}
+		
+		/**
+		 * Starts configured quantity of worker threads shared by lanes
+		 * @param threadName - thread name (for single worker) or thread name prefix (for multiple workers)
+		 * @return started worker threads
+		 */
+		public List<Thread> startWorkers(String threadName) {
+			String strThreadName = "threadName";
+			Objects.requireNonNull(threadName, strThreadName);
+			
+			List<Thread> result = new ArrayList<>(workerCount);
+			for(int i=0; i<workerCount; i++) {
+				var name = (workerCount == 1) ? threadName : String.format(STR_THREAD_WORKER, threadName, i + 1);
+				var thread = new Thread(this, name);
+				result.add(thread);
+				thread.start();
+			}
+			
+			return result;
+		}
+		
+		/**
+		 * Submits configured quantity of shared workers to executor
+		 * @param executor - workers executor (i.e. created via ExecutionMode.newExecutor())
+		 * @return workers futures
+		 */
+		public List<Future<?>> startWorkers(ExecutorService executor) {
+			String strExecutor = "executor";
+			Objects.requireNonNull(executor, strExecutor);
+			
+			List<Future<?>> result = new ArrayList<>(workerCount);
+			for(int i=0; i<workerCount; i++) result.add( executor.submit(this) );
+			
+			return result;
+		}
+		
+		/**
+		 * @return true if poison pill was received and no lane has documents queued, retries or documents in flight
+		 */
+		protected boolean isCompleted() {
+			if(poisonPill.get() == null) return false;
+			
+			for(var lane : order) {
+				if( !lane.isDrained() ) return false;
+			}
+			return true;
+		}
+		
+		/**
+		 * Serves each lane once starting from the next one in round robin
+		 * @return true if any document was sent
+		 */
+		protected boolean serveLanes() throws Exception {
+			int count = order.size(), start = Math.floorMod( cursor.getAndIncrement(), Math.max(count, 1) );
+			boolean result = false;
+			
+			for(int i=0; i<count; i++) {
+				var lane = order.get( (start + i) % count );
+				T document = lane.pollReady();
+				if(document == null) continue;
+				
+				// global budget is shared by lanes - lane permit is granted already
+				lane.metrics.onRateLimitStall( rateLimiter.acquire() );
+				lane.dispatch(document);
+				result = true;
+			}
+			return result;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				// trigger event to report client about successfully thread starting
+				triggerEvent(MsgCommand.STARTED);
+				
+				for(int attempt = 0; ; ) {
+					if( serveLanes() ) {
+						attempt = 0;
+						continue;
+					}
+					if( isCompleted() ) break;
+					
+					// nothing to send right now - lanes are empty or over their quotas
+					waitStrategy.idle(attempt++);
+				}
+				
+				for(var lane : order) lane.awaitInFlight();
+				
+				// trigger event to report client about successfully thread completion
+				triggerEvent(poisonPill.get(), null);
+			}catch(Throwable ex) {
+				onError(null, ex);
+			}
+		}
+		
+		/**
+		 * Closes lanes connection pools
+		 */
+		@Override
+		public void close() throws IOException {
+			for(var pool : pools) pool.close();
+		}
+	}
+	
+	/**
+	 * Consistent hash ring: each node is placed on 64-bit ring by many virtual nodes, key belongs to the first
+	 * node clockwise from key hash. Node leaving moves only its own keys (spread over remaining nodes evenly).
+	 * Ring snapshot is replaced on change, so lookups are lock-free.
+	 */
+	public static class HashRing {
+		protected static final String STR_VIRTUAL_NODE		= "%s#%d";
+		protected static final int	  INT_VIRTUAL_NODES		= 128;
+		
+		protected final int							virtualNodes;
+		protected final Set<String>					nodes	= new HashSet<>();
+		protected volatile NavigableMap<Long, String> ring	= new TreeMap<>();
+		
+		public HashRing() {
+			this(INT_VIRTUAL_NODES);
+		}
+		
+		/**
+		 * @param virtualNodes - points per node on ring, more points - more even keys distribution
+		 */
+		public HashRing(int virtualNodes) {
+			String strVirtualNodes = "virtualNodes";
+			if(virtualNodes < 1) throw new IllegalArgumentException(strVirtualNodes);
+			
+			this.virtualNodes = virtualNodes;
+		}
+		
+		protected static long hash(String key) {
+			long hash = LongDedupCache.LONG_FNV_OFFSET;
+			for(int i=0; i<key.length(); i++) {
+				hash ^= key.charAt(i);
+				hash *= LongDedupCache.LONG_FNV_PRIME;
+			}
+			// FNV-1a spreads similar keys poorly over high bits - final mixing fixes it
+			return LongDedupCache.hash(hash);
+		}
+		
+		/**
+		 * @return true if node was added
+		 */
+		public synchronized boolean add(String node) {
+			String strNode = "node";
+			Objects.requireNonNull(node, strNode);
+			if( !nodes.add(node) ) return false;
+			
+			var result = new TreeMap<>(ring);
+			for(int i=0; i<virtualNodes; i++) result.put( hash(String.format(STR_VIRTUAL_NODE, node, i)), node );
+			ring = result;
+			return true;
+		}
+		
+		/**
+		 * @return true if node was removed
+		 */
+		public synchronized boolean remove(String node) {
+			if( !nodes.remove(node) ) return false;
+			
+			var result = new TreeMap<>(ring);
+			result.values().removeIf( owner -> owner.equals(node) );
+			ring = result;
+			return true;
+		}
+		
+		/**
+		 * @return node owning key, null if ring is empty
+		 */
+		public String nodeFor(String key) {
+			String strKey = "key";
+			Objects.requireNonNull(key, strKey);
+			
+			NavigableMap<Long, String> local = ring;
+			if( local.isEmpty() ) return null;
+			
+			Map.Entry<Long, String> entry = local.ceilingEntry( hash(key) );
+			return (entry != null) ? entry.getValue() : local.firstEntry().getValue();
+		}
+		
+		/**
+		 * @return nodes in natural order
+		 */
+		public synchronized List<String> getNodes() {
+			List<String> result = new ArrayList<>(nodes);
+			Collections.sort(result);
+			return result;
 		}
 	}
 	
 	/**
-	 * Base abstract message (document) request processing runnable class
-	 *
-	 * @param <T> - message (document) type
+	 * Cluster member: several CrptApi instances (i.e. local processes) split documents by consistent hashing
+	 * of shard key (docId by default) with no external coordinator. Document owned by other node is forwarded to it
+	 * over HTTP, owned one is sent to local processor. Global rate limit is split between live nodes evenly -
+	 * each node replaces its processor rate limiter by its share. Node starts with share of all nodes configured,
+	 * peer it has not heard of yet counts as live until it answers or is given up. Shares sum is the global limit
+	 * while nodes see the same ring only - sides of network partition split the limit each between nodes it sees,
+	 * so the cluster might exceed the global limit until partition is over. Nodes exchange heartbeats, node missed several
+	 * of them in a row (or announced leaving) is removed from ring and the rest rebalance: ring keys and rate shares
+	 * are recomputed. Node coming back (or joining first time) is added again by its heartbeat.
+	 * Documents queued by leaving node stay there - it drains them before exit, only new documents are rerouted.
+	 * Receiver never reroutes forwarded document, so documents do not bounce while ring views differ.
+	 * Receiver does not block on its full queue - it answers 503 and sender waits for room as local sendRequest() does.
 	 */
-	public static abstract class Request<T extends Header> implements Runnable {
-		protected static final String STR_REQUEST_ERROR = "Request (id=%s) was processed by remote API " + 
-				"with next error '%s', HTTP-response status '%s' expected!";
+	public static class ClusterNode implements AutoCloseable {
+		protected static final String STR_THREAD_CLUSTER	= "ClusterNode-thread";
+		protected static final String STR_THREAD_HEARTBEAT	= "ClusterNode-heartbeat";
+		protected static final String STR_HEARTBEAT_PATH	= "/cluster/heartbeat";
+		protected static final String STR_DOCUMENT_PATH		= "/cluster/document";
+		protected static final String STR_LEAVE_PATH		= "/cluster/leave";
+		protected static final String STR_HEADER_NODE		= "X-Cluster-Node";
+		protected static final String STR_HEADER_ID			= "X-Document-Id";
+		protected static final String STR_HEADER_CERTIFICATE = "X-Certificate";
+		protected static final String STR_NODE_ID			= "%s:%d";
+		protected static final String STR_NODE_URI			= "http://%s%s";
+		protected static final String STR_FORWARD_FAILED	= "Node %s answered %d to forwarded document (id=%s)";
+		protected static final String STR_FORWARD_UNKNOWN	= "Node %s did not answer to forwarded document (id=%s), it might be accepted";
+		protected static final String STR_CLUSTER			= "ClusterNode object: {id='%s', nodes=%s, requestLimit='%d'}";
+		protected static final long	  LONG_HEARTBEAT_MILLIS	= 500L;
+		protected static final long	  LONG_TIMEOUT_MILLIS	= 1000L;
+		protected static final long	  LONG_BUSY_MILLIS		= 50L;
+		protected static final int	  INT_MISSED_HEARTBEATS	= 3;
+		protected static final int	  INT_BACKLOG			= 1000;
 		
-		protected Long			sleepTimeNanos	= -1L;
-		protected Consumer<T> 	actionHandler	= null;
-		protected Supplier<T>	messageFactory	= null;
+		protected final String								id;
+		protected final RequestProcessor<Document, String>	processor;
+		protected final Function<Document, String>			shardKey;
+		protected final long								globalLimit;
+		protected final TimeUnit							timeUnit;
+		protected final TokenBucketRateLimiter				rateLimiter;
+		protected final HashRing							ring		= new HashRing();
+		// known peers by id (live or not) and their heartbeats missed in a row
+		protected final ConcurrentMap<String, Integer>		peers		= new ConcurrentHashMap<>();
+		// peers neither answered nor given up yet - they have their shares reserved
+		protected final Set<String>							unknown		= ConcurrentHashMap.newKeySet();
+		protected final HttpServer							server;
+		protected final ExecutorService						serverExecutor;
+		protected final HttpClient							client;
+		protected final ScheduledExecutorService			heartbeat;
+		protected final LongAdder							local		= new LongAdder();
+		protected final LongAdder							forwarded	= new LongAdder();
+		protected final LongAdder							received	= new LongAdder();
+		protected volatile boolean							closed		= false;
 		
-		protected void triggerEvent(T data, MsgCommand command) {
-			assert data != null;
+		/**
+		 * Starts node listening loopback port, node joins peers given (they might be not started yet)
+		 * @param port - node port
+		 * @param peerPorts - ports of other nodes on loopback interface
+		 * @param processor - local processor, its rate limiter is replaced by node share of global limit
+		 * @param globalLimit - requests quantity per time unit for the whole cluster
+		 * @param timeUnit - time unit
+		 * @param shardKey - document shard key (i.e. docId or participantInn)
+		 */
+		public ClusterNode(int port, List<Integer> peerPorts, RequestProcessor<Document, String> processor, 
+				long globalLimit, TimeUnit timeUnit, Function<Document, String> shardKey) throws IOException {
+			String strPeerPorts = "peerPorts", strProcessor = "processor", strGlobalLimit = "globalLimit", 
+					strTimeUnit = "timeUnit", strShardKey = "shardKey";
 			
-			if(actionHandler != null) {
-				if(command != null) data.setControlCommand(command);
-				actionHandler.accept(data);
+			Objects.requireNonNull(peerPorts, strPeerPorts);
+			this.processor	= Objects.requireNonNull(processor, strProcessor);
+			this.timeUnit	= Objects.requireNonNull(timeUnit, strTimeUnit);
+			this.shardKey	= Objects.requireNonNull(shardKey, strShardKey);
+			if(globalLimit < 1) throw new IllegalArgumentException(strGlobalLimit);
+			this.globalLimit = globalLimit;
+			
+			var address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+			id = nodeId( address.getAddress().getHostAddress(), port );
+			
+			rateLimiter = new TokenBucketRateLimiter(globalLimit, timeUnit, 1);
+			processor.setRateLimiter(rateLimiter);
+			
+			ring.add(id);
+			for(int peerPort : peerPorts) {
+				String peer = nodeId( address.getAddress().getHostAddress(), peerPort );
+				// peer joins ring as soon as its first heartbeat is answered, its share is reserved till then
+				if( !peer.equals(id) ) {
+					peers.put(peer, INT_MISSED_HEARTBEATS);
+					unknown.add(peer);
+				}
 			}
+			rebalance();
+			
+			client = HttpClient.newBuilder()
+					.connectTimeout( Duration.ofMillis(LONG_TIMEOUT_MILLIS) )
+					.build();
+			
+			server = HttpServer.create(address, INT_BACKLOG);
+			serverExecutor = ExecutionMode.PLATFORM.newExecutor(STR_THREAD_CLUSTER);
+			server.setExecutor(serverExecutor);
+			server.createContext(STR_HEARTBEAT_PATH, this::onHeartbeat);
+			server.createContext(STR_DOCUMENT_PATH, this::onDocument);
+			server.createContext(STR_LEAVE_PATH, this::onLeave);
+			server.start();
+			
+			heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				var thread = new Thread(runnable, STR_THREAD_HEARTBEAT);
+				thread.setDaemon(true);
+				return thread;
+			});
+			heartbeat.scheduleWithFixedDelay(this::sendHeartbeats, 0L, LONG_HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
 		}
 		
-		protected void triggerEvent(MsgCommand command) {
-			if(messageFactory != null) triggerEvent(messageFactory.get(), command);
+		/**
+		 * Constructs node sharding documents by docId
+		 */
+		public ClusterNode(int port, List<Integer> peerPorts, RequestProcessor<Document, String> processor, 
+				long globalLimit, TimeUnit timeUnit) throws IOException {
+			this(port, peerPorts, processor, globalLimit, timeUnit, Document::getDocId);
 		}
 		
-		public Request(Long requestLimit, TimeUnit timeUnit) {
-			String strTimeUnit = "timeUnit", strRequestLimit = "requestLimit";
-			Long multiplier = -1L;
+		protected static String nodeId(String host, int port) {
+			return String.format(STR_NODE_ID, host, port);
+		}
+		
+		protected static URI uriOf(String node, String path) {
+			return URI.create( String.format(STR_NODE_URI, node, path) );
+		}
+		
+		/**
+		 * Checks node id got from peer is 'host:port' one - malformed id never gets into peers
+		 */
+		protected static boolean isNodeId(String node) {
+			if(node == null) return false;
 			
-			Objects.requireNonNull(timeUnit, strTimeUnit);
+			int colon = node.lastIndexOf(':'), portLength = node.length() - colon - 1;
+			if(colon < 1 || portLength < 1 || portLength > 5 || !Validation.isDigits( node.subSequence(colon + 1, node.length()) )) 
+				return false;
 			
-			if( (requestLimit > 0) && ( (timeUnit == TimeUnit.NANOSECONDS && requestLimit == (multiplier = 1L)) || 
-					(timeUnit == TimeUnit.MICROSECONDS && requestLimit <= (multiplier = Double.valueOf(Math.pow(10, 3)).longValue())) ||
-					(timeUnit == TimeUnit.MILLISECONDS && requestLimit <= (multiplier = Double.valueOf(Math.pow(10, 6)).longValue())) ||
-					(timeUnit == TimeUnit.SECONDS && requestLimit <= (multiplier = Double.valueOf(Math.pow(10, 9)).longValue())) ||
-					(timeUnit == TimeUnit.MINUTES && requestLimit <= (multiplier = Double.valueOf(Math.pow(10, 9)).longValue()*60)) ||
-					(timeUnit == TimeUnit.MINUTES && requestLimit <= (multiplier = Double.valueOf(Math.pow(10, 9)).longValue()*3600)) 
-					) ){
-				sleepTimeNanos = multiplier / requestLimit;
-			} else throw new IllegalArgumentException(strRequestLimit);
+			int port = Integer.parseInt( node.substring(colon + 1) );
+			if(port < 1 || port > 65535) return false;
+			
+			try {
+				return uriOf(node, STR_HEARTBEAT_PATH).getHost() != null;
+			}catch(IllegalArgumentException ex) {
+				return false;
+			}
 		}
 		
-		public void setActionHandler(Consumer<T> actionHandler, Supplier<T>	messageFactory) {
-			this.actionHandler = actionHandler;
-			this.messageFactory = messageFactory;
+		/**
+		 * Recomputes node share of global limit: limit is divided by live nodes and peers not known yet, remainder 
+		 * goes to the first live nodes in natural order, so shares sum is the global limit at most (each node gets 1 at least)
+		 */
+		protected synchronized void rebalance() {
+			List<String> nodes = ring.getNodes();
+			int count = nodes.size() + unknown.size(), rank = nodes.indexOf(id);
+			
+			long share = globalLimit / count + ( (rank < globalLimit % count) ? 1 : 0 );
+			rateLimiter.setRequestLimit( Math.max(1L, share) );
 		}
-	}
-	
-	/**
-	 * Send requests from user to remote API
-	 *
-	 * @param <T> - message (document) type
-	 * @param <U> - security key objects with toString() method defined
-	 */
-	public static class RequestProcessor<T extends Header, U> extends Request<T> {
-		protected BlockingQueue<T>					queue;
-		protected Function<T, ResponseEntity<?>> 	restSender;
 		
-		public RequestProcessor(Long requestLimit, TimeUnit timeUnit, int requestBufferLength, 
-				Function<T, ResponseEntity<?>> restSender) {
-			super(requestLimit, timeUnit);
+		protected void join(String peer) {
+			peers.put(peer, 0);
 			
-			String strBuffLen = "requestBufferLength", strRestSender = "restSender";
-					
-			if(requestBufferLength < 1 || requestBufferLength > 10000) throw new IllegalArgumentException(strBuffLen);
-			queue = new ArrayBlockingQueue<>(requestBufferLength);
+			boolean known = unknown.remove(peer);
+			if( !closed && (ring.add(peer) | known) ) rebalance();
+		}
+		
+		protected void leave(String peer) {
+			peers.computeIfPresent( peer, (key, missed) -> INT_MISSED_HEARTBEATS );
 			
-			this.restSender = Objects.requireNonNull(restSender, strRestSender);
+			boolean known = unknown.remove(peer);
+			if( ring.remove(peer) | known ) rebalance();
+		}
+		
+		protected void sendHeartbeats() {
+			for(String peer : peers.keySet()) {
+				try {
+					var request = HttpRequest.newBuilder( uriOf(peer, STR_HEARTBEAT_PATH) )
+							.header(STR_HEADER_NODE, id)
+							.timeout( Duration.ofMillis(LONG_TIMEOUT_MILLIS) )
+							.GET()
+							.build();
+					
+					var response = client.send( request, HttpResponse.BodyHandlers.discarding() );
+					if( response.statusCode() == HttpStatus.OK.value() ) {
+						join(peer);
+						continue;
+					}
+				}catch(IOException | RuntimeException ex) {
+					// peer is not reachable (or its id is not valid) - it is counted as missed heartbeat below,
+					// exception must not escape, otherwise scheduler cancels heartbeats of this node for good
+				}catch(InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				
+				int missed = peers.merge( peer, 1, (count, one) -> Math.min(count + one, INT_MISSED_HEARTBEATS) );
+				if(missed >= INT_MISSED_HEARTBEATS) leave(peer);
+			}
+		}
+		
+		protected void onHeartbeat(HttpExchange exchange) throws IOException {
+			try {
+				// heartbeat of peer is its liveness proof as well - new node joins this way
+				String peer = exchange.getRequestHeaders().getFirst(STR_HEADER_NODE);
+				if( isNodeId(peer) && !peer.equals(id) ) join(peer);
+				
+				exchange.sendResponseHeaders(closed ? HttpStatus.SERVICE_UNAVAILABLE.value() : HttpStatus.OK.value(), -1);
+			}finally {
+				exchange.close();
+			}
+		}
+		
+		protected void onLeave(HttpExchange exchange) throws IOException {
+			try {
+				// node is never told to leave its own ring
+				String peer = exchange.getRequestHeaders().getFirst(STR_HEADER_NODE);
+				if(peer != null && !peer.equals(id)) leave(peer);
+				
+				exchange.sendResponseHeaders(HttpStatus.OK.value(), -1);
+			}finally {
+				exchange.close();
+			}
+		}
+		
+		protected void onDocument(HttpExchange exchange) throws IOException {
+			try {
+				byte[] body = exchange.getRequestBody().readAllBytes();
+				var headers = exchange.getRequestHeaders();
+				
+				Document document;
+				try {
+					document = Document.fromJson( Long.parseLong(headers.getFirst(STR_HEADER_ID)), body );
+				}catch(IOException | RuntimeException ex) {
+					exchange.sendResponseHeaders(HttpStatus.BAD_REQUEST.value(), -1);
+					return;
+				}
+				
+				// server thread never waits for room - overflow policy is applied, sender retries rejected document
+				if( !processor.trySend(document, headers.getFirst(STR_HEADER_CERTIFICATE)) ) {
+					exchange.sendResponseHeaders(HttpStatus.SERVICE_UNAVAILABLE.value(), -1);
+					return;
+				}
+				received.increment();
+				exchange.sendResponseHeaders(HttpStatus.ACCEPTED.value(), -1);
+			}finally {
+				exchange.close();
+			}
 		}
 		
 		/**
-		 * Client method to send document request onto remote API "Chestny Znak"
-		 * @param document - POJO class mapped to JSON document
+		 * Client method routing document to its owner node. Owner refused connection leaves ring at once
+		 * and document goes to the next owner, busy owner (503) is asked again after a pause. Owner did not answer
+		 * in time is kept - it might have accepted document, so document is neither rerouted nor sent twice,
+		 * caller gets UncheckedIOException instead. Terminal message (poison pill) is not routed - it is local one.
+		 * @param document - document
 		 * @param certificate - authorization certificate for remote API
 		 * @return InterruptedException, returns in case of external interruption to maintain it in caller thread, null otherwise
 		 */
-		public InterruptedException sendRequest(T document, U certificate) {
+		public InterruptedException route(Document document, String certificate) {
 			String strDocument = "document";
 			Objects.requireNonNull(document, strDocument);
 			
-			if(certificate != null) document.setReservedA( certificate.toString() );
-			else document.setReservedA( null );
-			
-			try {
-				queue.put(document);
-				return null;
-			}catch(InterruptedException ex) {
-				return ex;
-			}
-		}
-
-		@Override
-		public void run() {
-			T newDoc = null;
+			if(document.getControlCommand() == MsgCommand.POISON_PILL) return processor.sendRequest(document, certificate);
 			
-			try {
-				// trigger event to report client about successfully thread starting
-				triggerEvent(MsgCommand.STARTED);
-				
-				String json;
-				var mapper = new ObjectMapper().findAndRegisterModules();
+			while(true) {
+				String owner = ring.nodeFor( shardKey.apply(document) );
+				if( owner == null || owner.equals(id) ) {
+					local.increment();
+					return processor.sendRequest(document, certificate);
+				}
 				
-				while(true) {
-					newDoc = queue.take();
-					assert newDoc != null;
-					
-					// in case document is terminal "last wagon"-command (i.e. "poison pill")
-					if( newDoc.getControlCommand() == MsgCommand.POISON_PILL ) {
-						// it's over - successfully completing all our tasks
-						break;
+				try {
+					int status = forward(owner, document, certificate);
+					if( status == HttpStatus.ACCEPTED.value() ) {
+						forwarded.increment();
+						return null;
 					}
+					if( status != HttpStatus.SERVICE_UNAVAILABLE.value() ) 
+						throw new IllegalStateException( String.format(STR_FORWARD_FAILED, owner, status, document.getId()) );
 					
-					// send user message (requested document) via HTTPS to remote API
-					ResponseEntity<?> restResponse = restSender.apply(newDoc);
-					assert restResponse != null;
-					
-					// suppose, HttpStatus.CREATED is OK (no error) answer
-					if(restResponse.getStatusCode() == HttpStatus.CREATED) {
-						// request was processed (created) by remote API successfully
-						// convert current document to JSON for trace & debug purposes
-						json = mapper.writeValueAsString( newDoc );
-					} else {
-						// request was processed (not created) by remote API with some errors
-						// inform client about error
-						// STR_REQUEST_ERROR = "Request (id=%s) processed with next error '%s'!";
-						json = String.format( STR_REQUEST_ERROR, newDoc.getId(), 
-								restResponse.getStatusCode().value() + ", " + restResponse.getStatusCode().name(),
-								HttpStatus.CREATED.value() + ", " + HttpStatus.CREATED.name() );
-					}
-					
-					newDoc.setReservedB(json);
-					
-					// trigger event to report client about current document was processed
-					triggerEvent(newDoc, null);
-					
-					// ... let's go to chill several nanoseconds for fulfilling some of our requirements :)
-					TimeUnit.NANOSECONDS.sleep(sleepTimeNanos);
+					Thread.sleep(LONG_BUSY_MILLIS);
+				}catch(ConnectException | HttpConnectTimeoutException ex) {
+					// request was not sent at all - document goes to the next owner
+					leave(owner);
+				}catch(IOException ex) {
+					throw new UncheckedIOException( String.format(STR_FORWARD_UNKNOWN, owner, document.getId()), ex );
+				}catch(InterruptedException ex) {
+					return ex;
 				}
+			}
+		}
+		
+		/**
+		 * @return owner response status
+		 */
+		protected int forward(String owner, Document document, String certificate) throws IOException, InterruptedException {
+			var request = HttpRequest.newBuilder( uriOf(owner, STR_DOCUMENT_PATH) )
+					.header(STR_HEADER_NODE, id)
+					.header( STR_HEADER_ID, String.valueOf(document.getId()) )
+					.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+					.timeout( Duration.ofMillis(LONG_TIMEOUT_MILLIS) )
+					.POST( HttpRequest.BodyPublishers.ofByteArray(JsonCodec.toBytes(document)) );
+			if(certificate != null) request.header(STR_HEADER_CERTIFICATE, certificate);
+			
+			return client.send( request.build(), HttpResponse.BodyHandlers.discarding() ).statusCode();
+		}
+		
+		public String getId() {
+			return id;
+		}
+		
+		/**
+		 * @return live nodes including this one
+		 */
+		public List<String> getNodes() {
+			return ring.getNodes();
+		}
+		
+		/**
+		 * @return node share of global limit
+		 */
+		public long getRequestLimit() {
+			return rateLimiter.getRequestLimit();
+		}
+		
+		public long getLocalCount() {
+			return local.sum();
+		}
+		
+		public long getForwardedCount() {
+			return forwarded.sum();
+		}
+		
+		public long getReceivedCount() {
+			return received.sum();
+		}
+		
+		@Override
+		public String toString() {
+			return String.format( STR_CLUSTER, id, getNodes(), getRequestLimit() );
+		}
+		
+		/**
+		 * Announces leaving to live peers and stops node, local processor is not stopped - it drains documents queued
+		 */
+		@Override
+		public void close() {
+			if(closed) return;
+			
+			closed = true;
+			heartbeat.shutdownNow();
+			
+			for(String peer : ring.getNodes()) {
+				if( peer.equals(id) ) continue;
 				
-				// trigger event to report client about successfully thread completion
-				triggerEvent(newDoc, null);
-			}catch(Throwable ex) {
-				MsgCommand err = (ex instanceof InterruptedException) ? MsgCommand.INTERRUPTED : MsgCommand.EXCEPTION;
-				if(newDoc != null) triggerEvent(newDoc, err);
-				else triggerEvent(err);
-				
-				// log error
-				synchronized (System.err) {
-					ex.printStackTrace();
+				var request = HttpRequest.newBuilder( uriOf(peer, STR_LEAVE_PATH) )
+						.header(STR_HEADER_NODE, id)
+						.timeout( Duration.ofMillis(LONG_TIMEOUT_MILLIS) )
+						.POST( HttpRequest.BodyPublishers.noBody() )
+						.build();
+				try {
+					client.send( request, HttpResponse.BodyHandlers.discarding() );
+				}catch(IOException ex) {
+					// peer missing the announcement finds out by heartbeats
+				}catch(InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					break;
 				}
 			}
+			
+			server.stop(0);
+			serverExecutor.shutdown();
 		}
 	}
 	
@@ -1293,19 +7409,15 @@ public class CrptApi {
 				// trigger event to report client about successfully process completion
 				triggerEvent(terminalMessage, null);
 			}catch(Throwable ex) {
-				MsgCommand err = (ex instanceof InterruptedException) ? MsgCommand.INTERRUPTED : MsgCommand.EXCEPTION;
-				if(newDoc != null) triggerEvent(newDoc, err);
-				else triggerEvent(err);
-				
-				// log error
-				synchronized (System.err) {
-					ex.printStackTrace();
-				}
+				onError(newDoc, ex);
 			}
 		}
 	}
 	
 	protected static	   RestTemplate restTemplate	= null;
+	protected static	   HttpClient	httpClient		= null;
+	// sets Authorization header by token of document certificate (reservedA), null - no header
+	protected static	   AuthTokenProvider authTokenProvider = null;
 	
 	protected static 	   URI	  URI_API_DOC_CREATE	= null;
 	protected static final String STR_URL_SERVER_NAME	= "ismp.crpt.ru";
@@ -1313,6 +7425,12 @@ public class CrptApi {
 	
 	protected static final String STR_THREAD_GENERATOR	= "RequestGenerator-thread";
 	protected static final String STR_THREAD_PROCESSOR	= "RequestProcessor-thread";
+	protected static final String STR_THREAD_EVENT_BUS	= "EventBus-thread";
+	protected static final int	  INT_EVENT_BUFFER		= 1024;
+	protected static final int	  INT_PROCESSOR_WORKERS	= 2;
+	protected static final int	  INT_MAX_IN_FLIGHT		= 1000;
+	protected static final String STR_ARG_VIRTUAL		= "virtual";
+	protected static final String STR_ARG_ASYNC			= "async";
 	protected static final String STR_THREAD			= "Thread '%s' %s";
 	protected static final String STR_THR_STARTED 		= "has started successfully.";
 	protected static final String STR_THR_RUNNING 		= "is running, data trace -> ";
@@ -1320,7 +7438,7 @@ public class CrptApi {
 	protected static final String STR_THR_INTERRUPTED	= "was interrupted by someone, exiting :/";
 	protected static final String STR_THR_EXCEPTIONED	= "was exceptioned by some critical error unfortunately :(";
 	
-	protected static String getThreadStatusDesc(MsgCommand command) {
+	protected static String getThreadStatusDesc(MsgCommand command, String threadName) {
 		assert command != null;
 		String strCommand = null;
 		
@@ -1344,23 +7462,23 @@ public class CrptApi {
 			assert false;
 		}
 		
-		return String.format( STR_THREAD, Thread.currentThread().getName(), strCommand );
+		return String.format( STR_THREAD, threadName, strCommand );
 	}
 	
 	public static void eventHandler(Document doc) {
-		String result = getThreadStatusDesc( doc.getControlCommand() );
+		// event might be handled by other thread (events bus) than it was triggered by
+		String source = (doc.getEventSource() != null) ? doc.getEventSource() : Thread.currentThread().getName();
+		String result = getThreadStatusDesc( doc.getControlCommand(), source );
 		
 		// if message is not control signal - prepare data content for output
 		if(doc.getControlCommand() == MsgCommand.DATA) {
 			// make differ output for visual convenience to distinguish two threads
-			if( Thread.currentThread().getName().equals(STR_THREAD_GENERATOR) ) result += doc.getDocId(); // doc id
-			else if( Thread.currentThread().getName().equals(STR_THREAD_PROCESSOR) ) result += doc.getReservedB(); // json
-			else assert false;
+			if( source.startsWith(STR_THREAD_GENERATOR) ) result += doc.getDocId(); // doc id
+			else result += doc.getReservedB(); // json, processor worker or asynchronous HTTP client thread
 		}
 		
-		synchronized (System.out) {
-			System.out.println(result);
-		}
+		// println is atomic, events bus calls it from single thread anyway
+		System.out.println(result);
 	}
 	
 	public static ResponseEntity<?> restSender(Document doc){
@@ -1369,12 +7487,74 @@ public class CrptApi {
 		assert restTemplate != null;
 		assert URI_API_DOC_CREATE != null;
 		
+		// document is serialized once - the same bytes are reused for trace data
+		byte[] body;
+		try {
+			body = JsonCodec.toBytes(doc);
+		}catch(JsonProcessingException ex) {
+			throw new IllegalArgumentException(ex);
+		}
+		
+		var headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		if(authTokenProvider != null && doc.getReservedA() != null) authTokenProvider.authorize( headers, doc.getReservedA() );
+		
 		// send request to remote API
-		ResponseEntity<?> responce = restTemplate.postForEntity(URI_API_DOC_CREATE, doc, Document.class);
+		ResponseEntity<?> responce = restTemplate.postForEntity(URI_API_DOC_CREATE, new HttpEntity<>(body, headers), Document.class);
 		
 		return responce;
 	}
 	
+	/**
+	 * Sends document onto remote API via non-blocking HTTP client
+	 * @param doc - document
+	 * @return future completed by remote API response
+	 */
+	public static CompletableFuture<ResponseEntity<?>> asyncRestSender(Document doc) {
+		if(doc == null) return CompletableFuture.completedFuture(null);
+		
+		assert httpClient != null;
+		assert URI_API_DOC_CREATE != null;
+		
+		byte[] body;
+		try {
+			body = JsonCodec.toBytes(doc);
+		}catch(JsonProcessingException ex) {
+			return CompletableFuture.failedFuture(ex);
+		}
+		
+		var request = HttpRequest.newBuilder(URI_API_DOC_CREATE)
+				.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+				.POST( HttpRequest.BodyPublishers.ofByteArray(body) );
+		
+		if(authTokenProvider != null && doc.getReservedA() != null) {
+			try {
+				var headers = new HttpHeaders();
+				authTokenProvider.authorize( headers, doc.getReservedA() );
+				request.header( HttpHeaders.AUTHORIZATION, headers.getFirst(HttpHeaders.AUTHORIZATION) );
+			}catch(RuntimeException ex) {
+				return CompletableFuture.failedFuture(ex);
+			}
+		}
+		
+		// send request to remote API, response is converted to the same type synchronous sender returns
+		return httpClient.sendAsync( request.build(), HttpResponse.BodyHandlers.ofString() ).thenApply(CrptApi::toResponseEntity);
+	}
+	
+	protected static ResponseEntity<?> toResponseEntity(HttpResponse<String> response) {
+		var headers = new HttpHeaders();
+		response.headers().map().forEach(headers::addAll);
+		
+		return ResponseEntity.status( response.statusCode() ).headers(headers).body( response.body() );
+	}
+	
+	/**
+	 * @param provider - tokens provider documents senders set 'Authorization' header by, null - no header
+	 */
+	public static void setAuthTokenProvider(AuthTokenProvider provider) {
+		authTokenProvider = provider;
+	}
+	
 	public static void init() throws URISyntaxException {
 		var urlMetadata = new RestMetadataChestnyZnak.Builder()
 				.serverName(STR_URL_SERVER_NAME)
@@ -1386,37 +7566,147 @@ public class CrptApi {
 		URI_API_DOC_CREATE = urlMetadata.getDocumentCreationUri();
 		
 		// construct RestTemplate https instance
-		restTemplate = RestTemplateFactory.getInstance();
+		restTemplate = RestTemplateFactory.getInstance(urlMetadata);
+		
+		// construct non-blocking HttpClient https instance
+		httpClient = HttpClientFactory.getInstance();
+	}
+	
+	/**
+	 * @return events bus printing events to console by its own thread, blocks publishers on overflow so no event is lost
+	 */
+	protected static EventBus<Document> newEventBus() {
+		return new EventBus<>(INT_EVENT_BUFFER, EventBus.OverflowPolicy.BLOCK, CrptApi::eventHandler, STR_THREAD_EVENT_BUS);
+	}
+	
+	/**
+	 * @return circuit breaker of remote API sender - rejects documents at once while remote API is failing
+	 */
+	protected static CircuitBreaker newCircuitBreaker() {
+		return new CircuitBreaker.Builder()
+				.name(STR_URL_SERVER_NAME)
+				.window(20, 10)
+				.slowCalls(80.0, 10000L)
+				.waitInOpenMillis(30000L)
+				.build();
 	}
 	
 	public static void launch() throws URISyntaxException, InterruptedException {
 		var docGen = new DocumentGenerator();
 		
-		var reqProc = new RequestProcessor<Document, String>(30L, TimeUnit.MINUTES, 10, CrptApi::restSender);
+		var breaker = newCircuitBreaker();
+		var reqProc = new RequestProcessor<Document, String>(30L, TimeUnit.MINUTES, 10, 
+				breaker.decorate(CrptApi::restSender));
+		reqProc.setRetryPolicies( RetryPolicies.defaults() );
+		reqProc.setActionHandler(CrptApi::eventHandler, docGen);
+		reqProc.setCircuitBreaker(breaker);
+		reqProc.setWorkerCount(INT_PROCESSOR_WORKERS);
+		
+		var reqGen = new RequestGenerator<Document>(2L, TimeUnit.SECONDS, 10, reqProc::sendRequest);
+		reqGen.setActionHandler(CrptApi::eventHandler, docGen);
+		
+		try(var eventBus = newEventBus()) {
+			reqProc.setEventBus(eventBus);
+			reqGen.setEventBus(eventBus);
+			
+			var thrProcs = reqProc.startWorkers(STR_THREAD_PROCESSOR);
+			var thrGen = new Thread(reqGen, STR_THREAD_GENERATOR);
+			thrGen.start();
+			
+			thrGen.join();
+			for(Thread thrProc : thrProcs) thrProc.join();
+		}
+		
+		System.out.println( reqProc.getMetrics().snapshot() );
+		System.out.println("All requested job is done");
+	}
+	
+	/**
+	 * Asynchronous launch - single processor worker keeps many requests in flight via non-blocking HTTP client
+	 */
+	public static void launchAsync() throws InterruptedException {
+		var docGen = new DocumentGenerator();
+		
+		var breaker = newCircuitBreaker();
+		var reqProc = new RequestProcessor<Document, String>(30L, TimeUnit.MINUTES, 10, 
+				breaker.decorateAsync(CrptApi::asyncRestSender), INT_MAX_IN_FLIGHT);
+		reqProc.setRetryPolicies( RetryPolicies.defaults() );
+		reqProc.setActionHandler(CrptApi::eventHandler, docGen);
+		reqProc.setCircuitBreaker(breaker);
+		
+		var reqGen = new RequestGenerator<Document>(2L, TimeUnit.SECONDS, 10, reqProc::sendRequest);
+		reqGen.setActionHandler(CrptApi::eventHandler, docGen);
+		
+		try(var eventBus = newEventBus()) {
+			reqProc.setEventBus(eventBus);
+			reqGen.setEventBus(eventBus);
+			
+			var thrProcs = reqProc.startWorkers(STR_THREAD_PROCESSOR);
+			var thrGen = new Thread(reqGen, STR_THREAD_GENERATOR);
+			thrGen.start();
+			
+			thrGen.join();
+			for(Thread thrProc : thrProcs) thrProc.join();
+		}
+		
+		System.out.println("All requested job is done");
+	}
+	
+	/**
+	 * Executor based launch - processor workers, generator and (in virtual mode) each document sending
+	 * are run by executors of requested threads kind
+	 * @param mode - threads kind
+	 */
+	public static void launch(ExecutionMode mode) throws InterruptedException {
+		var docGen = new DocumentGenerator();
+		
+		var procExecutor = mode.newExecutor(STR_THREAD_PROCESSOR);
+		var genExecutor = mode.newExecutor(STR_THREAD_GENERATOR);
+		// virtual threads are cheap - one per in-flight document
+		var sendExecutor = (mode == ExecutionMode.VIRTUAL) ? mode.newExecutor(STR_THREAD_PROCESSOR) : null;
+		
+		var breaker = newCircuitBreaker();
+		var reqProc = new RequestProcessor<Document, String>(30L, TimeUnit.MINUTES, 10, 
+				breaker.decorate(CrptApi::restSender));
+		reqProc.setRetryPolicies( RetryPolicies.defaults() );
 		reqProc.setActionHandler(CrptApi::eventHandler, docGen);
-		var thrProc = new Thread(reqProc, STR_THREAD_PROCESSOR);
-		thrProc.start();
+		reqProc.setCircuitBreaker(breaker);
+		reqProc.setWorkerCount(INT_PROCESSOR_WORKERS);
+		reqProc.setSendExecutor(sendExecutor, INT_MAX_IN_FLIGHT);
 		
 		var reqGen = new RequestGenerator<Document>(2L, TimeUnit.SECONDS, 10, reqProc::sendRequest);
 		reqGen.setActionHandler(CrptApi::eventHandler, docGen);
-		var thrGen = new Thread(reqGen, STR_THREAD_GENERATOR);
-		thrGen.start();
 		
-		thrGen.join();
-		thrProc.join();
+		try(var eventBus = newEventBus()) {
+			reqProc.setEventBus(eventBus);
+			reqGen.setEventBus(eventBus);
+			
+			reqProc.startWorkers(procExecutor);
+			genExecutor.submit(reqGen);
+			
+			genExecutor.shutdown();
+			procExecutor.shutdown();
+			genExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			procExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			if(sendExecutor != null) sendExecutor.shutdown();
+		}
 		
 		System.out.println("All requested job is done");
 	}
 
 	public static void main(String[] args) {
 		try {
+			// benchmarks and cluster node runs against local stub API are launched by CrptApiBenchmark.main()
 			init();
-			launch();
+			
+			// pass 'virtual' argument to run requests by virtual threads
+			// pass 'async' argument to send requests via non-blocking HTTP client
+			if( args.length > 0 && STR_ARG_VIRTUAL.equalsIgnoreCase(args[0]) ) launch(ExecutionMode.VIRTUAL);
+			else if( args.length > 0 && STR_ARG_ASYNC.equalsIgnoreCase(args[0]) ) launchAsync();
+			else launch();
 		}catch(Throwable ex) {
 			// log error
-			synchronized (System.err) {
-				ex.printStackTrace();
-			}
+			ex.printStackTrace();
 		}
 	}
 
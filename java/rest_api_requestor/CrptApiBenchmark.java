@@ -0,0 +1,511 @@
+package rest_api_requestor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * JMH benchmarks of request pipeline and local runs of CrptApi against local stub of remote API ('ismp.crpt.ru'):
+ * document building & validation, JSON serialization, journal append, RequestProcessor end-to-end throughput
+ * (by queue sizes and worker counts), enqueue contention of producers. Kept apart from CrptApi, so client classes 
+ * carry no harness code and no stub HTTP server.
+ * Build by 'mvn package' and run 'java -jar target/benchmarks.jar' (JMH options might be passed), i.e. before deploying 
+ * to catch performance regressions. Pass 'node <port> <peer ports...>' arguments to run cluster node over loopback.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CrptApiBenchmark {
+	
+	/**
+	 * Local stub of remote API ('ismp.crpt.ru') listening loopback interface - used by benchmarks and local runs.
+	 * Answers each request with configured HTTP status after configured latency, no response body.
+	 */
+	public static class StubApiServer implements AutoCloseable {
+		protected static final String	STR_THREAD_STUB	= "StubApiServer-thread";
+		protected static final String	STR_ROOT_PATH	= "/";
+		protected static final int		INT_BACKLOG		= 1000;
+		protected static final String	STR_AUTH_PATH	= "/api/v3/auth/cert/";
+		protected static final String	STR_CHALLENGE	= "{\"uuid\":\"%s\",\"data\":\"%s\"}";
+		protected static final String	STR_TOKEN		= "{\"token\":\"%s\"}";
+		
+		protected HttpServer		server;
+		protected ExecutorService	executor;
+		protected volatile long		latencyMillis;
+		protected volatile int		responseStatus	= HttpStatus.CREATED.value();
+		protected LongAdder			requestCount	= new LongAdder();
+		protected LongAdder			authorizedCount	= new LongAdder();
+		protected LongAdder			tokenCount		= new LongAdder();
+		
+		/**
+		 * Starts stub server on ephemeral loopback port
+		 * @param latencyMillis - emulated remote API latency in milliseconds
+		 */
+		public StubApiServer(long latencyMillis) throws IOException {
+			this.latencyMillis = latencyMillis;
+			
+			server = HttpServer.create( new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), INT_BACKLOG );
+			executor = CrptApi.ExecutionMode.PLATFORM.newExecutor(STR_THREAD_STUB);
+			server.setExecutor(executor);
+			server.createContext(STR_ROOT_PATH, this::handle);
+			server.start();
+		}
+		
+		protected void handle(HttpExchange exchange) throws IOException {
+			try {
+				exchange.getRequestBody().readAllBytes();
+				requestCount.increment();
+				if( exchange.getRequestHeaders().containsKey(HttpHeaders.AUTHORIZATION) ) authorizedCount.increment();
+				
+				if(latencyMillis > 0) TimeUnit.MILLISECONDS.sleep(latencyMillis);
+				
+				exchange.sendResponseHeaders(responseStatus, -1);
+			}catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}finally {
+				exchange.close();
+			}
+		}
+		
+		/**
+		 * Adds handler of specific path (i.e. some other remote API endpoint)
+		 * @param path - request URI path
+		 * @param handler - request handler
+		 */
+		public void addHandler(String path, HttpHandler handler) {
+			server.createContext(path, handler);
+		}
+		
+		/**
+		 * Adds certificate flow auth endpoints: GET 'key' sub-path returns random challenge, 
+		 * POST returns new random token for any signature
+		 */
+		public void addAuthHandler() {
+			addHandler(STR_AUTH_PATH, exchange -> {
+				try {
+					exchange.getRequestBody().readAllBytes();
+					
+					String body;
+					if( exchange.getRequestURI().getPath().endsWith(CrptApi.HttpTokenSource.STR_KEY_PATH) ) {
+						body = String.format( STR_CHALLENGE, UUID.randomUUID(), UUID.randomUUID() );
+					}else {
+						tokenCount.increment();
+						body = String.format( STR_TOKEN, UUID.randomUUID() );
+					}
+					
+					byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+					exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+					exchange.sendResponseHeaders(HttpStatus.OK.value(), bytes.length);
+					exchange.getResponseBody().write(bytes);
+				}finally {
+					exchange.close();
+				}
+			});
+		}
+		
+		/**
+		 * @return token endpoint URI of auth handler
+		 */
+		public URI getAuthUri() throws URISyntaxException {
+			return new URI( "http", null, server.getAddress().getHostString(), getPort(), STR_AUTH_PATH, null, null );
+		}
+		
+		public int getPort() {
+			return server.getAddress().getPort();
+		}
+		
+		/**
+		 * @return remote API metadata pointing to stub server via plain HTTP
+		 */
+		public CrptApi.RestMetadataChestnyZnak getMetadata() {
+			return new CrptApi.RestMetadataChestnyZnak.Builder()
+					.protocol(CrptApi.RestTemplateMetadata.Protocol.HTTP)
+					.serverName( server.getAddress().getHostString() )
+					.serverPort( getPort() )
+					.urlSuffix(CrptApi.STR_URL_APP_SUFFIX)
+					.build();
+		}
+		
+		public void setLatencyMillis(long latencyMillis) {
+			this.latencyMillis = latencyMillis;
+		}
+		
+		public void setResponseStatus(int responseStatus) {
+			this.responseStatus = responseStatus;
+		}
+		
+		public long getRequestCount() {
+			return requestCount.sum();
+		}
+		
+		/**
+		 * @return documents requests quantity having 'Authorization' header
+		 */
+		public long getAuthorizedCount() {
+			return authorizedCount.sum();
+		}
+		
+		/**
+		 * @return tokens quantity issued by auth handler
+		 */
+		public long getTokenCount() {
+			return tokenCount.sum();
+		}
+		
+		@Override
+		public void close() {
+			server.stop(0);
+			executor.shutdownNow();
+		}
+	}
+	
+	protected static final String STR_JOURNAL_DIR		= "crpt-journal";
+	protected static final String STR_THREAD_PRODUCER	= "Benchmark-producer";
+	// documents per end-to-end invocation
+	protected static final int	  INT_DOCUMENTS			= 1000;
+	protected static final long	  LONG_STUB_LATENCY_MILLIS = 1L;
+	
+	protected static CrptApi.Document.Product buildProduct() {
+		return new CrptApi.Document.Product.Builder()
+				.certificateDocument("CONFORMITY_CERTIFICATE")
+				.certificateDocumentDate( LocalDate.of(2023, 1, 23) )
+				.certificateDocumentNumber("123456")
+				.ownerInn("7707083893")
+				.producerInn("7707083893")
+				.productionDate( LocalDate.of(2023, 1, 23) )
+				.tnvedCode("0401")
+				.uitCode("010460406000600021N4N57RSCBUZTQ")
+				.uituCode("046040600060002")
+				.build();
+	}
+	
+	protected static CrptApi.Document buildDocument(long id, CrptApi.Document.Product product) {
+		return new CrptApi.Document.Builder()
+				.id(id)
+				.controlCommand(CrptApi.MsgCommand.DATA)
+				.description( new CrptApi.Document.Description(product.getOwnerInn()) )
+				.docId( Long.toString(id) )
+				.docStatus("NEW")
+				.docType("LP_INTRODUCE_GOODS")
+				.importRequest(true)
+				.ownerInn( product.getOwnerInn() )
+				.participantInn( product.getOwnerInn() )
+				.producerInn( product.getProducerInn() )
+				.productionDate( product.getProductionDate() )
+				.productionType("OWN_PRODUCTION")
+				.products( List.of(product) )
+				.regDate( product.getProductionDate() )
+				.regNumber( Long.toString(id) )
+				.build();
+	}
+	
+	/**
+	 * Document of benchmark thread - producers do not share mutable document header
+	 */
+	@State(Scope.Thread)
+	public static class DocumentState {
+		protected CrptApi.Document.Product	product;
+		protected CrptApi.Document			document;
+		protected ObjectWriter				writer;
+		
+		@Setup(Level.Trial)
+		public void setUp() {
+			product		= buildProduct();
+			document	= buildDocument(1L, product);
+			writer		= CrptApi.JsonCodec.getWriter(CrptApi.Document.class);
+		}
+	}
+	
+	/**
+	 * Fresh journal per trial - without sync on append record is durable against JVM crash only, 
+	 * group commit survives OS crash too
+	 */
+	@State(Scope.Benchmark)
+	public static class JournalState {
+		@Param({ "false", "true" })
+		public boolean syncOnAppend;
+		
+		protected Path								directory;
+		protected CrptApi.DocumentJournal<CrptApi.Document> journal;
+		
+		@Setup(Level.Trial)
+		public void setUp() throws IOException {
+			directory	= Files.createTempDirectory(STR_JOURNAL_DIR);
+			journal		= new CrptApi.DocumentJournal<>(directory, CrptApi.DocumentJournal.INT_SEGMENT_SIZE, 
+					CrptApi.DocumentJournal.LONG_SYNC_INTERVAL, syncOnAppend, CrptApi.Document::fromJson);
+		}
+		
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			journal.close();
+			try( var files = Files.list(directory) ) {
+				for( Path path : (Iterable<Path>)files::iterator ) Files.delete(path);
+			}
+			Files.delete(directory);
+		}
+	}
+	
+	/**
+	 * Local stub API and documents sent through processor per invocation
+	 */
+	@State(Scope.Benchmark)
+	public static class ProcessorState {
+		@Param({ "10", "1000" })
+		public int queueSize;
+		
+		@Param({ "1", "4" })
+		public int workers;
+		
+		protected StubApiServer										stub;
+		protected CrptApi.HttpConnectionPool						pool;
+		protected Function<CrptApi.Document, ResponseEntity<?>>	sender;
+		protected List<CrptApi.Document>							documents;
+		
+		@Setup(Level.Trial)
+		public void setUp() throws Exception {
+			stub = new StubApiServer(LONG_STUB_LATENCY_MILLIS);
+			pool = CrptApi.RestTemplateFactory.createConnectionPool( stub.getMetadata() );
+			
+			var uri = stub.getMetadata().getDocumentCreationUri();
+			var restTemplate = pool.getRestTemplate();
+			var headers = new HttpHeaders();
+			headers.setContentType(MediaType.APPLICATION_JSON);
+			
+			sender = doc -> {
+				try {
+					return restTemplate.postForEntity( uri, new HttpEntity<>(CrptApi.JsonCodec.toBytes(doc), headers), String.class );
+				}catch(JsonProcessingException ex) {
+					throw new IllegalArgumentException(ex);
+				}
+			};
+		}
+		
+		@Setup(Level.Invocation)
+		public void setUpDocuments() {
+			var product = buildProduct();
+			documents = new ArrayList<>(INT_DOCUMENTS);
+			for(int i=0; i<INT_DOCUMENTS; i++) documents.add( buildDocument(i, product) );
+		}
+		
+		@TearDown(Level.Trial)
+		public void tearDown() throws Exception {
+			pool.close();
+			stub.close();
+		}
+	}
+	
+	/**
+	 * Processor nobody starts - its queue is drained by consumer thread of the group, 
+	 * so producers compete for the queue only
+	 */
+	@State(Scope.Group)
+	public static class QueueState {
+		@Param({ "ARRAY", "LINKED", "RING" })
+		public CrptApi.QueueStrategy queueStrategy;
+		
+		protected CrptApi.RequestProcessor<CrptApi.Document, String> processor;
+		
+		@Setup(Level.Trial)
+		public void setUp() {
+			processor = new CrptApi.RequestProcessor<>(1000000000L, TimeUnit.SECONDS, INT_DOCUMENTS, 
+					doc -> new ResponseEntity<>(HttpStatus.CREATED));
+			processor.setQueue(queueStrategy, INT_DOCUMENTS, CrptApi.WaitStrategy.YIELD);
+			processor.setTraceMode(CrptApi.RequestProcessor.TraceMode.OFF, 1);
+		}
+	}
+	
+	@Benchmark
+	public CrptApi.Document documentBuild(DocumentState state) {
+		return buildDocument(1L, state.product);
+	}
+	
+	@Benchmark
+	public byte[] documentSerialization(DocumentState state) throws JsonProcessingException {
+		return state.writer.writeValueAsBytes(state.document);
+	}
+	
+	@Benchmark
+	@Threads(4)
+	public void journalAppend(JournalState journalState, DocumentState state) throws IOException {
+		journalState.journal.append(state.document);
+	}
+	
+	/**
+	 * Documents are sent through processor end-to-end (enqueue, rate limiter, HTTP request to local stub, completion),
+	 * result is per document
+	 */
+	@Benchmark
+	@OperationsPerInvocation(INT_DOCUMENTS)
+	public void processorEndToEnd(ProcessorState state) throws InterruptedException {
+		var reqProc = new CrptApi.RequestProcessor<CrptApi.Document, String>(1000000000L, TimeUnit.SECONDS, state.queueSize, 
+				state.sender);
+		reqProc.setQueue(CrptApi.QueueStrategy.ARRAY, state.queueSize, CrptApi.WaitStrategy.YIELD);
+		reqProc.setTraceMode(CrptApi.RequestProcessor.TraceMode.OFF, 1);
+		reqProc.setWorkerCount(state.workers);
+		var thrProcs = reqProc.startWorkers(CrptApi.STR_THREAD_PROCESSOR);
+		
+		for(CrptApi.Document document : state.documents) {
+			InterruptedException ex = reqProc.sendRequest(document, null);
+			if(ex != null) throw ex;
+		}
+		
+		var poisonPill = new CrptApi.Document.Builder().controlCommand(CrptApi.MsgCommand.POISON_PILL).build();
+		reqProc.sendRequest(poisonPill, null);
+		for(Thread thread : thrProcs) thread.join();
+	}
+	
+	/**
+	 * Producers of the group enqueue via trySend, rejected attempt (full queue) is counted as operation too
+	 */
+	@Benchmark
+	@Group("enqueueContention")
+	@GroupThreads(4)
+	public boolean enqueue(QueueState queueState, DocumentState state) {
+		return queueState.processor.trySend(state.document, null);
+	}
+	
+	@Benchmark
+	@Group("enqueueContention")
+	@GroupThreads(1)
+	public CrptApi.Document dequeue(QueueState queueState) {
+		return queueState.processor.queue.poll();
+	}
+	
+	protected static final String STR_ARG_NODE			= "node";
+	protected static final String STR_NODE_SUMMARY		= "%s: local=%d, forwarded=%d, received=%d";
+	protected static final long	  LONG_CLUSTER_LIMIT	= 6L;
+	protected static final long	  LONG_NODE_LINGER_MILLIS = 3000L;
+	
+	/**
+	 * Cluster node launch - documents generated by node are sharded over nodes started with the same ports on loopback
+	 * (i.e. 'node 8081 8082 8083', 'node 8082 8081 8083', 'node 8083 8081 8082'), each node sends its documents
+	 * onto its own local stub API with its share of cluster rate limit
+	 * @param port - node port
+	 * @param peerPorts - other nodes ports
+	 */
+	public static void launchNode(int port, List<Integer> peerPorts) throws Exception {
+		var docGen = new CrptApi.DocumentGenerator();
+		
+		try( var stub = new StubApiServer(0L);
+				var pool = CrptApi.RestTemplateFactory.createConnectionPool( stub.getMetadata() ) ) {
+			var uri = stub.getMetadata().getDocumentCreationUri();
+			var restTemplate = pool.getRestTemplate();
+			var headers = new HttpHeaders();
+			headers.setContentType(MediaType.APPLICATION_JSON);
+			
+			var reqProc = new CrptApi.RequestProcessor<CrptApi.Document, String>(LONG_CLUSTER_LIMIT, TimeUnit.SECONDS, 10, doc -> {
+				try {
+					return restTemplate.postForEntity( uri, new HttpEntity<>(CrptApi.JsonCodec.toBytes(doc), headers), String.class );
+				}catch(JsonProcessingException ex) {
+					throw new IllegalArgumentException(ex);
+				}
+			});
+			reqProc.setActionHandler(CrptApi::eventHandler, docGen);
+			
+			try( var eventBus = CrptApi.newEventBus() ) {
+				reqProc.setEventBus(eventBus);
+				
+				var node = new CrptApi.ClusterNode(port, peerPorts, reqProc, LONG_CLUSTER_LIMIT, TimeUnit.SECONDS);
+				var thrProcs = reqProc.startWorkers(CrptApi.STR_THREAD_PROCESSOR);
+				try {
+					// generator terminal message is not passed on - peers might forward documents after generator is done
+					var reqGen = new CrptApi.RequestGenerator<CrptApi.Document>(2L, TimeUnit.SECONDS, 10, 
+							(doc, cert) -> (doc.getControlCommand() == CrptApi.MsgCommand.POISON_PILL) ? null : node.route(doc, cert));
+					reqGen.setActionHandler(CrptApi::eventHandler, docGen);
+					reqGen.setEventBus(eventBus);
+					
+					var thrGen = new Thread(reqGen, CrptApi.STR_THREAD_GENERATOR);
+					
+					// peers answer heartbeats meanwhile - documents are sharded from the very beginning
+					Thread.sleep(LONG_NODE_LINGER_MILLIS);
+					thrGen.start();
+					thrGen.join();
+					Thread.sleep(LONG_NODE_LINGER_MILLIS);
+					
+					System.out.println(node);
+				}finally {
+					// node leaves cluster before local processor is stopped - peers do not forward documents anymore
+					node.close();
+				}
+				
+				var poisonPill = docGen.get();
+				poisonPill.setControlCommand(CrptApi.MsgCommand.POISON_PILL);
+				reqProc.sendRequest(poisonPill, null);
+				for(Thread thrProc : thrProcs) thrProc.join();
+				
+				System.out.println( String.format(STR_NODE_SUMMARY, node.getId(), node.getLocalCount(), 
+						node.getForwardedCount(), node.getReceivedCount()) );
+			}
+			System.out.println( reqProc.getMetrics().snapshot() );
+		}
+	}
+	
+	
+	public static void main(String[] args) {
+		try {
+			// pass 'node <port> <peer ports...>' arguments to run cluster node over loopback against local stub API
+			if( args.length > 1 && STR_ARG_NODE.equalsIgnoreCase(args[0]) ) {
+				List<Integer> peerPorts = new ArrayList<>();
+				for(int i=2; i<args.length; i++) peerPorts.add( Integer.parseInt(args[i]) );
+				
+				launchNode(Integer.parseInt(args[1]), peerPorts);
+				return;
+			}
+			
+			// JMH runner options might be passed, i.e. '-p workers=4' - no remote API and key store needed
+			Main.main(args);
+		}catch(Throwable ex) {
+			// log error
+			ex.printStackTrace();
+		}
+	}
+
+}